@@ -1,8 +1,13 @@
 package com.luanvv.rag.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.multipart.MultipartResolver;
 import org.springframework.web.multipart.support.StandardServletMultipartResolver;
 
@@ -10,6 +15,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Application configuration class.
@@ -18,10 +24,18 @@ import java.nio.file.Paths;
 @EnableConfigurationProperties(AppProperties.class)
 public class AppConfig {
     
+    private static final Logger logger = LoggerFactory.getLogger(AppConfig.class);
+    
     private final AppProperties appProperties;
+    private final boolean virtualThreads;
     
-    public AppConfig(AppProperties appProperties) {
+    public AppConfig(AppProperties appProperties,
+                     @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsEnabled) {
         this.appProperties = appProperties;
+        this.virtualThreads = virtualThreadsEnabled && Runtime.version().feature() >= 21;
+        if (virtualThreadsEnabled && !virtualThreads) {
+            logger.warn("Virtual threads require Java 21, running {} on platform threads", Runtime.version());
+        }
     }
     
     /**
@@ -50,4 +64,84 @@ public class AppConfig {
         
         return uploadDir;
     }
+    
+    /**
+     * Worker pool for the document ingestion pipeline (extract, chunk, embed, persist).
+     * The pool is bounded; admission is controlled by DocumentIngestionService.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor ingestionExecutor() {
+        AppProperties.Ingestion ingestion = appProperties.getIngestion();
+        
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(ingestion.getWorkerThreads());
+        executor.setMaxPoolSize(ingestion.getWorkerThreads());
+        executor.setQueueCapacity(ingestion.getQueueCapacity());
+        configureThreads(executor, "ingest-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * Worker pool for chunk embedding batches.
+     * Its size caps how many batch requests are in flight against the embedding model at once.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor embeddingBatchExecutor() {
+        int maxConcurrentBatches = appProperties.getEmbedding().getMaxConcurrentBatches();
+        
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrentBatches);
+        executor.setMaxPoolSize(maxConcurrentBatches);
+        configureThreads(executor, "embed-batch-");
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * Worker pool for the parallel legs of hybrid retrieval.
+     * When it is saturated the calling request thread runs the leg itself instead of failing.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor retrievalExecutor() {
+        int retrievalThreads = appProperties.getVector().getRetrievalThreads();
+        
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(retrievalThreads);
+        executor.setMaxPoolSize(retrievalThreads);
+        executor.setQueueCapacity(retrievalThreads * 4);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        configureThreads(executor, "retrieval-");
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * Worker pool for the map step of whole-document answers.
+     * Each query also caps its own sections in flight, so one large document cannot fill the queue.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor mapReduceExecutor() {
+        int mapConcurrency = appProperties.getQuery().getMapConcurrency();
+        
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(mapConcurrency);
+        executor.setMaxPoolSize(mapConcurrency);
+        configureThreads(executor, "map-reduce-");
+        executor.initialize();
+        return executor;
+    }
+    
+    /**
+     * Run the pool's workers on virtual threads when enabled.
+     * Pool size and queue still bound the work, so database and model load stay as configured.
+     */
+    private void configureThreads(ThreadPoolTaskExecutor executor, String threadNamePrefix) {
+        if (virtualThreads) {
+            executor.setThreadFactory(new VirtualThreadTaskExecutor(threadNamePrefix).getVirtualThreadFactory());
+        } else {
+            executor.setThreadNamePrefix(threadNamePrefix);
+        }
+    }
 }
@@ -3,6 +3,8 @@ package com.luanvv.rag.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+
 /**
  * Configuration properties for the RAG application.
  */
@@ -13,6 +15,11 @@ public class AppProperties {
     private File file = new File();
     private Document document = new Document();
     private Vector vector = new Vector();
+    private Ingestion ingestion = new Ingestion();
+    private Embedding embedding = new Embedding();
+    private Query query = new Query();
+    private AnswerCache answerCache = new AnswerCache();
+    private Model model = new Model();
     
     public File getFile() {
         return file;
@@ -38,6 +45,46 @@ public class AppProperties {
         this.vector = vector;
     }
     
+    public Ingestion getIngestion() {
+        return ingestion;
+    }
+    
+    public void setIngestion(Ingestion ingestion) {
+        this.ingestion = ingestion;
+    }
+    
+    public Embedding getEmbedding() {
+        return embedding;
+    }
+    
+    public void setEmbedding(Embedding embedding) {
+        this.embedding = embedding;
+    }
+    
+    public Query getQuery() {
+        return query;
+    }
+    
+    public void setQuery(Query query) {
+        this.query = query;
+    }
+    
+    public AnswerCache getAnswerCache() {
+        return answerCache;
+    }
+    
+    public void setAnswerCache(AnswerCache answerCache) {
+        this.answerCache = answerCache;
+    }
+    
+    public Model getModel() {
+        return model;
+    }
+    
+    public void setModel(Model model) {
+        this.model = model;
+    }
+    
     public static class File {
         private String uploadDir = "./uploads";
         private String[] allowedExtensions = {"pdf", "docx", "txt"};
@@ -101,6 +148,18 @@ public class AppProperties {
     public static class Vector {
         private double similarityThreshold = 0.7;
         private int maxResults = 10;
+        private int efSearch = 100;
+        private int probes = 10;
+        private boolean hybridEnabled = true;
+        private int vectorCandidates = 20;
+        private int lexicalCandidates = 20;
+        private int rrfK = 60;
+        private int retrievalThreads = 8;
+        private int exactScanMaxChunks = 2000;
+        private String iterativeScan = "relaxed_order";
+        private boolean mmrEnabled = true;
+        private double mmrLambda = 0.7;
+        private int mmrCandidates = 30;
         
         public double getSimilarityThreshold() {
             return similarityThreshold;
@@ -117,5 +176,351 @@ public class AppProperties {
         public void setMaxResults(int maxResults) {
             this.maxResults = maxResults;
         }
+        
+        public int getEfSearch() {
+            return efSearch;
+        }
+        
+        public void setEfSearch(int efSearch) {
+            this.efSearch = efSearch;
+        }
+        
+        public int getProbes() {
+            return probes;
+        }
+        
+        public void setProbes(int probes) {
+            this.probes = probes;
+        }
+        
+        public boolean isHybridEnabled() {
+            return hybridEnabled;
+        }
+        
+        public void setHybridEnabled(boolean hybridEnabled) {
+            this.hybridEnabled = hybridEnabled;
+        }
+        
+        public int getVectorCandidates() {
+            return vectorCandidates;
+        }
+        
+        public void setVectorCandidates(int vectorCandidates) {
+            this.vectorCandidates = vectorCandidates;
+        }
+        
+        public int getLexicalCandidates() {
+            return lexicalCandidates;
+        }
+        
+        public void setLexicalCandidates(int lexicalCandidates) {
+            this.lexicalCandidates = lexicalCandidates;
+        }
+        
+        public int getRrfK() {
+            return rrfK;
+        }
+        
+        public void setRrfK(int rrfK) {
+            this.rrfK = rrfK;
+        }
+        
+        public int getRetrievalThreads() {
+            return retrievalThreads;
+        }
+        
+        public void setRetrievalThreads(int retrievalThreads) {
+            this.retrievalThreads = retrievalThreads;
+        }
+        
+        public int getExactScanMaxChunks() {
+            return exactScanMaxChunks;
+        }
+        
+        public void setExactScanMaxChunks(int exactScanMaxChunks) {
+            this.exactScanMaxChunks = exactScanMaxChunks;
+        }
+        
+        public String getIterativeScan() {
+            return iterativeScan;
+        }
+        
+        public void setIterativeScan(String iterativeScan) {
+            this.iterativeScan = iterativeScan;
+        }
+        
+        public boolean isMmrEnabled() {
+            return mmrEnabled;
+        }
+        
+        public void setMmrEnabled(boolean mmrEnabled) {
+            this.mmrEnabled = mmrEnabled;
+        }
+        
+        public double getMmrLambda() {
+            return mmrLambda;
+        }
+        
+        public void setMmrLambda(double mmrLambda) {
+            this.mmrLambda = mmrLambda;
+        }
+        
+        public int getMmrCandidates() {
+            return mmrCandidates;
+        }
+        
+        public void setMmrCandidates(int mmrCandidates) {
+            this.mmrCandidates = mmrCandidates;
+        }
+    }
+    
+    public static class Ingestion {
+        private int workerThreads = 2;
+        private int queueCapacity = 20;
+        
+        public int getWorkerThreads() {
+            return workerThreads;
+        }
+        
+        public void setWorkerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+        }
+        
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+        
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+    
+    public static class Embedding {
+        private int batchSize = 16;
+        private int maxConcurrentBatches = 2;
+        private boolean cacheEnabled = true;
+        private int cacheMaxEntries = 5000;
+        private boolean persistentCacheEnabled = true;
+        private Duration persistentCacheTtl = Duration.ofDays(30);
+        
+        public int getBatchSize() {
+            return batchSize;
+        }
+        
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+        
+        public int getMaxConcurrentBatches() {
+            return maxConcurrentBatches;
+        }
+        
+        public void setMaxConcurrentBatches(int maxConcurrentBatches) {
+            this.maxConcurrentBatches = maxConcurrentBatches;
+        }
+        
+        public boolean isCacheEnabled() {
+            return cacheEnabled;
+        }
+        
+        public void setCacheEnabled(boolean cacheEnabled) {
+            this.cacheEnabled = cacheEnabled;
+        }
+        
+        public int getCacheMaxEntries() {
+            return cacheMaxEntries;
+        }
+        
+        public void setCacheMaxEntries(int cacheMaxEntries) {
+            this.cacheMaxEntries = cacheMaxEntries;
+        }
+        
+        public boolean isPersistentCacheEnabled() {
+            return persistentCacheEnabled;
+        }
+        
+        public void setPersistentCacheEnabled(boolean persistentCacheEnabled) {
+            this.persistentCacheEnabled = persistentCacheEnabled;
+        }
+        
+        public Duration getPersistentCacheTtl() {
+            return persistentCacheTtl;
+        }
+        
+        public void setPersistentCacheTtl(Duration persistentCacheTtl) {
+            this.persistentCacheTtl = persistentCacheTtl;
+        }
+    }
+    
+    public static class Query {
+        private boolean speculativeRetrieval = true;
+        private double speculativeMatchThreshold = 0.6;
+        private boolean localIntentEnabled = true;
+        private int mapSectionChars = 6000;
+        private int mapConcurrency = 4;
+        private int mapMaxSections = 16;
+        private int reduceInputChars = 12000;
+        private int contextTokenBudget = 2000;
+        
+        public boolean isSpeculativeRetrieval() {
+            return speculativeRetrieval;
+        }
+        
+        public void setSpeculativeRetrieval(boolean speculativeRetrieval) {
+            this.speculativeRetrieval = speculativeRetrieval;
+        }
+        
+        public double getSpeculativeMatchThreshold() {
+            return speculativeMatchThreshold;
+        }
+        
+        public void setSpeculativeMatchThreshold(double speculativeMatchThreshold) {
+            this.speculativeMatchThreshold = speculativeMatchThreshold;
+        }
+        
+        public boolean isLocalIntentEnabled() {
+            return localIntentEnabled;
+        }
+        
+        public void setLocalIntentEnabled(boolean localIntentEnabled) {
+            this.localIntentEnabled = localIntentEnabled;
+        }
+        
+        public int getMapSectionChars() {
+            return mapSectionChars;
+        }
+        
+        public void setMapSectionChars(int mapSectionChars) {
+            this.mapSectionChars = mapSectionChars;
+        }
+        
+        public int getMapConcurrency() {
+            return mapConcurrency;
+        }
+        
+        public void setMapConcurrency(int mapConcurrency) {
+            this.mapConcurrency = mapConcurrency;
+        }
+        
+        public int getMapMaxSections() {
+            return mapMaxSections;
+        }
+        
+        public void setMapMaxSections(int mapMaxSections) {
+            this.mapMaxSections = mapMaxSections;
+        }
+        
+        public int getReduceInputChars() {
+            return reduceInputChars;
+        }
+        
+        public void setReduceInputChars(int reduceInputChars) {
+            this.reduceInputChars = reduceInputChars;
+        }
+        
+        public int getContextTokenBudget() {
+            return contextTokenBudget;
+        }
+        
+        public void setContextTokenBudget(int contextTokenBudget) {
+            this.contextTokenBudget = contextTokenBudget;
+        }
+    }
+    
+    public static class AnswerCache {
+        private boolean enabled = true;
+        private double similarityThreshold = 0.95;
+        private int maxEntries = 500;
+        private Duration ttl = Duration.ofHours(1);
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public double getSimilarityThreshold() {
+            return similarityThreshold;
+        }
+        
+        public void setSimilarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+        }
+        
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+        
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+        
+        public Duration getTtl() {
+            return ttl;
+        }
+        
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+    
+    public static class Model {
+        private ModelLimit chat = ModelLimit.of(2, 16);
+        private ModelLimit embedding = ModelLimit.of(4, 64);
+        private Duration maxQueueWait = Duration.ofSeconds(30);
+        
+        public ModelLimit getChat() {
+            return chat;
+        }
+        
+        public void setChat(ModelLimit chat) {
+            this.chat = chat;
+        }
+        
+        public ModelLimit getEmbedding() {
+            return embedding;
+        }
+        
+        public void setEmbedding(ModelLimit embedding) {
+            this.embedding = embedding;
+        }
+        
+        public Duration getMaxQueueWait() {
+            return maxQueueWait;
+        }
+        
+        public void setMaxQueueWait(Duration maxQueueWait) {
+            this.maxQueueWait = maxQueueWait;
+        }
+    }
+    
+    public static class ModelLimit {
+        private int maxConcurrentCalls;
+        private int maxQueuedCalls;
+        
+        static ModelLimit of(int maxConcurrentCalls, int maxQueuedCalls) {
+            ModelLimit limit = new ModelLimit();
+            limit.setMaxConcurrentCalls(maxConcurrentCalls);
+            limit.setMaxQueuedCalls(maxQueuedCalls);
+            return limit;
+        }
+        
+        public int getMaxConcurrentCalls() {
+            return maxConcurrentCalls;
+        }
+        
+        public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+        }
+        
+        public int getMaxQueuedCalls() {
+            return maxQueuedCalls;
+        }
+        
+        public void setMaxQueuedCalls(int maxQueuedCalls) {
+            this.maxQueuedCalls = maxQueuedCalls;
+        }
     }
 }
@@ -0,0 +1,62 @@
+package com.luanvv.rag.config;
+
+import com.pgvector.PGvector;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Registers the pgvector {@code vector} type on every PostgreSQL connection.
+ * With the type registered the driver sends and receives vectors in binary form
+ * instead of formatting and parsing a decimal string per float.
+ */
+@Configuration
+public class PgVectorConfig {
+
+    @Bean
+    public static BeanPostProcessor pgVectorDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof PgVectorDataSource)) {
+                    return new PgVectorDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * DataSource wrapper that registers the vector type on checkout.
+     * The driver caches the type lookup per physical connection, so repeat calls are cheap.
+     */
+    static class PgVectorDataSource extends DelegatingDataSource {
+
+        PgVectorDataSource(DataSource targetDataSource) {
+            super(targetDataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return registerVectorType(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return registerVectorType(super.getConnection(username, password));
+        }
+
+        private Connection registerVectorType(Connection connection) throws SQLException {
+            if (connection.isWrapperFor(PGConnection.class)) {
+                PGvector.addVectorType(connection);
+            }
+            return connection;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.luanvv.rag.controller;
 
 import com.luanvv.rag.entity.Document;
-import com.luanvv.rag.entity.DocumentChunk;
+import com.luanvv.rag.repository.DocumentChunkView;
+import com.luanvv.rag.service.DocumentBusyException;
 import com.luanvv.rag.service.DocumentService;
+import com.luanvv.rag.service.IngestionQueueFullException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -69,7 +71,12 @@ public class DocumentController {
             Document document = documentService.uploadDocument(file);
             redirectAttributes.addFlashAttribute("success", 
                 "Document uploaded successfully: " + document.getFilename());
-            
+
+        } catch (IngestionQueueFullException e) {
+            logger.warn("Rejected upload, ingestion queue full: {}", file.getOriginalFilename());
+            redirectAttributes.addFlashAttribute("error",
+                "The server is busy processing other documents, please retry shortly");
+
         } catch (Exception e) {
             logger.error("Error uploading document: {}", file.getOriginalFilename(), e);
             redirectAttributes.addFlashAttribute("error", "Error uploading document: " + e.getMessage());
@@ -109,6 +116,14 @@ public class DocumentController {
             
             return ResponseEntity.ok(response);
             
+        } catch (IngestionQueueFullException e) {
+            logger.warn("Rejected AJAX upload, ingestion queue full: {}", file.getOriginalFilename());
+            
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+            
         } catch (Exception e) {
             logger.error("Error in AJAX upload: {}", file.getOriginalFilename(), e);
             
@@ -119,6 +134,63 @@ public class DocumentController {
         }
     }
     
+    /**
+     * Replace the file of a document via AJAX; only changed chunks are embedded again.
+     */
+    @PostMapping("/{id}/replace")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> replaceDocument(@PathVariable Long id,
+                                                               @RequestParam("file") MultipartFile file) {
+        
+        logger.info("Replacing document {} with: {}", id, file.getOriginalFilename());
+        
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            if (file.isEmpty()) {
+                response.put("success", false);
+                response.put("message", "Please select a file to upload");
+                return ResponseEntity.badRequest().body(response);
+            }
+            
+            Document document = documentService.replaceDocument(id, file);
+            
+            response.put("success", true);
+            response.put("message", "Document replaced successfully");
+            response.put("document", Map.of(
+                "id", document.getId(),
+                "filename", document.getFilename(),
+                "status", document.getStatus().toString()
+            ));
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (IngestionQueueFullException e) {
+            logger.warn("Rejected replacement of document {}, ingestion queue full", id);
+            
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+            
+        } catch (DocumentBusyException e) {
+            logger.warn("Rejected replacement of document {}: {}", id, e.getMessage());
+            
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+            
+        } catch (Exception e) {
+            logger.error("Error replacing document: {}", id, e);
+            
+            response.put("success", false);
+            response.put("message", "Error replacing document: " + e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+    
     /**
      * View document details.
      */
@@ -128,7 +200,7 @@ public class DocumentController {
         
         try {
             Document document = documentService.getDocumentById(id);
-            List<DocumentChunk> chunks = documentService.getDocumentChunks(id);
+            List<DocumentChunkView> chunks = documentService.getDocumentChunks(id);
             
             model.addAttribute("document", document);
             model.addAttribute("chunks", chunks);
@@ -175,6 +247,11 @@ public class DocumentController {
             response.put("id", document.getId());
             response.put("status", document.getStatus().toString());
             response.put("totalChunks", document.getTotalChunks());
+            documentService.getIngestionProgress(id).ifPresent(progress -> {
+                response.put("stage", progress.getStage().toString());
+                response.put("totalChunks", progress.getTotalChunks());
+                response.put("processedChunks", progress.getProcessedChunks());
+            });
             
             return ResponseEntity.ok(response);
             
@@ -3,14 +3,23 @@ package com.luanvv.rag.controller;
 import com.luanvv.rag.entity.ChatMessage;
 import com.luanvv.rag.entity.QueryHistory;
 import com.luanvv.rag.service.ChatService;
+import com.luanvv.rag.service.ModelBusyException;
+import com.luanvv.rag.service.QueryStreamEvent;
 import com.luanvv.rag.service.RagQueryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +32,9 @@ import java.util.Map;
 public class QueryController {
     
     private static final Logger logger = LoggerFactory.getLogger(QueryController.class);
+
+    private static final long STREAM_TIMEOUT_MS = 5 * 60 * 1000L;
+    private static final int RETRY_AFTER_SECONDS = 5;
     
     private final RagQueryService ragQueryService;
     private final ChatService chatService;
@@ -84,6 +96,12 @@ public class QueryController {
             
             return ResponseEntity.ok(response);
             
+        } catch (ModelBusyException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            
+            return tooManyRequests(response);
+            
         } catch (Exception e) {
             logger.error("Error processing AJAX query: {}", question, e);
             
@@ -94,6 +112,53 @@ public class QueryController {
         }
     }
     
+    /**
+     * Process RAG query as server-sent events: a "retrieval" event with the selected chunks,
+     * "token" events while the answer is generated, then "done" with the saved query, or "error",
+     * or "busy" when the chat model queue is full.
+     */
+    @PostMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter askQuestionStream(@RequestParam("question") String question) {
+        
+        logger.info("Processing streamed query: {}", question);
+        
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        if (question == null || question.trim().isEmpty()) {
+            sendEvent(emitter, new QueryStreamEvent(QueryStreamEvent.ERROR, Map.of("message", "Question cannot be empty")));
+            emitter.complete();
+            return emitter;
+        }
+        
+        Disposable subscription = ragQueryService.streamQuery(question.trim()).subscribe(
+            event -> sendEvent(emitter, event),
+            e -> {
+                logger.warn("Streamed query ended with error: {}", e.getMessage());
+                emitter.completeWithError(e);
+            },
+            emitter::complete);
+        
+        // Stop generating when the client goes away or the stream times out
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(e -> subscription.dispose());
+        emitter.onCompletion(subscription::dispose);
+        return emitter;
+    }
+
+    private ResponseEntity<Map<String, Object>> tooManyRequests(Map<String, Object> body) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS))
+            .body(body);
+    }
+
+    private void sendEvent(SseEmitter emitter, QueryStreamEvent event) {
+        try {
+            emitter.send(SseEmitter.event().name(event.name()).data(event.data(), MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to send " + event.name() + " event", e);
+        }
+    }
+    
     /**
      * Get query by ID via AJAX.
      */
@@ -144,6 +209,13 @@ public class QueryController {
             
             return ResponseEntity.ok(result);
             
+        } catch (ModelBusyException e) {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            
+            return tooManyRequests(result);
+            
         } catch (Exception e) {
             logger.error("Error in chat with memory", e);
             
@@ -41,6 +41,12 @@ public class Document {
     @Column(name = "total_chunks")
     private Integer totalChunks = 0;
     
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+    
+    @Column(name = "source_document_id")
+    private Long sourceDocumentId;
+    
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
     
@@ -141,6 +147,29 @@ public class Document {
         this.totalChunks = totalChunks;
     }
     
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public Long getSourceDocumentId() {
+        return sourceDocumentId;
+    }
+    
+    public void setSourceDocumentId(Long sourceDocumentId) {
+        this.sourceDocumentId = sourceDocumentId;
+    }
+    
+    /**
+     * ID of the document that owns this document's chunks: the source of a duplicate upload, otherwise itself.
+     */
+    public Long getContentDocumentId() {
+        return sourceDocumentId != null ? sourceDocumentId : id;
+    }
+    
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -1,6 +1,7 @@
 package com.luanvv.rag.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Type;
 import java.time.LocalDateTime;
 
 /**
@@ -24,9 +25,10 @@ public class DocumentChunk {
     @Column(name = "chunk_index", nullable = false)
     private Integer chunkIndex;
     
-    // PostgreSQL vector type for embeddings (768 dimensions for nomic-embed-text)
-    @Column(name = "embedding_vector", columnDefinition = "vector(768)")
-    private String embeddingVector;
+    // PostgreSQL vector type for embeddings (1024 dimensions for bge-m3)
+    @Type(PgVectorType.class)
+    @Column(name = "embedding_vector", columnDefinition = "vector(1024)")
+    private float[] embeddingVector;
     
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
@@ -76,11 +78,11 @@ public class DocumentChunk {
         this.chunkIndex = chunkIndex;
     }
     
-    public String getEmbeddingVector() {
+    public float[] getEmbeddingVector() {
         return embeddingVector;
     }
     
-    public void setEmbeddingVector(String embeddingVector) {
+    public void setEmbeddingVector(float[] embeddingVector) {
         this.embeddingVector = embeddingVector;
     }
     
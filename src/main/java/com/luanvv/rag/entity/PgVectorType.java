@@ -0,0 +1,105 @@
+package com.luanvv.rag.entity;
+
+import com.pgvector.PGvector;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.query.TypedParameterValue;
+import org.hibernate.type.CustomType;
+import org.hibernate.type.spi.TypeConfiguration;
+import org.hibernate.usertype.UserType;
+import org.postgresql.util.PGobject;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Hibernate mapping between {@code float[]} and the pgvector {@code vector} column type.
+ * Values are bound as {@link PGvector}, which the driver sends in pgvector's binary
+ * format once the type is registered on the connection (see PgVectorConfig).
+ */
+public class PgVectorType implements UserType<float[]> {
+
+    private static final CustomType<float[]> BINDABLE_TYPE =
+        new CustomType<>(new PgVectorType(), new TypeConfiguration());
+
+    /**
+     * Wrap an embedding so it can be passed as a vector parameter to a native query.
+     */
+    public static TypedParameterValue<float[]> parameter(float[] embedding) {
+        return new TypedParameterValue<>(BINDABLE_TYPE, embedding);
+    }
+
+    /**
+     * Convert a value read from a vector column through plain JDBC.
+     */
+    public static float[] toEmbedding(Object value) throws SQLException {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof PGvector vector) {
+            return vector.toArray();
+        }
+        // Connection without the vector type registered: the driver hands back text
+        String text = value instanceof PGobject pgObject ? pgObject.getValue() : value.toString();
+        return text != null ? new PGvector(text).toArray() : null;
+    }
+
+    @Override
+    public int getSqlType() {
+        return Types.OTHER;
+    }
+
+    @Override
+    public Class<float[]> returnedClass() {
+        return float[].class;
+    }
+
+    @Override
+    public boolean equals(float[] x, float[] y) {
+        return Arrays.equals(x, y);
+    }
+
+    @Override
+    public int hashCode(float[] x) {
+        return Arrays.hashCode(x);
+    }
+
+    @Override
+    public float[] nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session, Object owner)
+            throws SQLException {
+        return toEmbedding(rs.getObject(position));
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, float[] value, int index, SharedSessionContractImplementor session)
+            throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.OTHER);
+        } else {
+            st.setObject(index, new PGvector(value));
+        }
+    }
+
+    @Override
+    public float[] deepCopy(float[] value) {
+        return value != null ? value.clone() : null;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return true;
+    }
+
+    @Override
+    public Serializable disassemble(float[] value) {
+        return deepCopy(value);
+    }
+
+    @Override
+    public float[] assemble(Serializable cached, Object owner) {
+        return deepCopy((float[]) cached);
+    }
+}
@@ -26,6 +26,9 @@ public class QueryHistory {
     @Column(name = "relevant_documents", columnDefinition = "TEXT")
     private String relevantDocuments;
     
+    @Column(name = "retrieval_scores", columnDefinition = "TEXT")
+    private String retrievalScores;
+    
     @Column(name = "processing_time_ms")
     private Long processingTimeMs;
     
@@ -85,6 +88,14 @@ public class QueryHistory {
         this.relevantDocuments = relevantDocuments;
     }
     
+    public String getRetrievalScores() {
+        return retrievalScores;
+    }
+    
+    public void setRetrievalScores(String retrievalScores) {
+        this.retrievalScores = retrievalScores;
+    }
+    
     public Long getProcessingTimeMs() {
         return processingTimeMs;
     }
@@ -1,19 +1,22 @@
 package com.luanvv.rag.repository;
 
 import com.luanvv.rag.entity.DocumentChunk;
+import org.hibernate.query.TypedParameterValue;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Repository interface for DocumentChunk entity operations.
  */
 @Repository
-public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, Long> {
+public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, Long>, DocumentChunkRepositoryCustom {
     
     /**
      * Find chunks by document ID.
@@ -31,55 +34,154 @@ public interface DocumentChunkRepository extends JpaRepository<DocumentChunk, Lo
     long countByDocumentId(Long documentId);
     
     /**
-     * Find similar chunks using vector similarity search.
-     * Uses cosine similarity with pgvector extension.
+     * Move all chunks, embeddings included, from one document to another inside the database.
+     */
+    @Modifying
+    @Query(value = "UPDATE document_chunks SET document_id = :targetDocumentId WHERE document_id = :sourceDocumentId",
+        nativeQuery = true)
+    int moveChunks(@Param("sourceDocumentId") Long sourceDocumentId, @Param("targetDocumentId") Long targetDocumentId);
+    
+    /**
+     * Find chunks of a document for display, without loading embeddings.
+     */
+    @Query("""
+        SELECT dc.id AS id, d.id AS documentId, d.filename AS filename,
+               dc.chunkText AS chunkText, dc.chunkIndex AS chunkIndex, dc.createdAt AS createdAt
+        FROM DocumentChunk dc JOIN dc.document d
+        WHERE d.id = :documentId
+        ORDER BY dc.chunkIndex
+        """)
+    List<DocumentChunkView> findChunkViewsByDocumentId(@Param("documentId") Long documentId);
+    
+    /**
+     * Find one page of a document's chunks in order, so large documents can be read incrementally.
+     */
+    @Query("""
+        SELECT dc.id AS id, d.id AS documentId, d.filename AS filename,
+               dc.chunkText AS chunkText, dc.chunkIndex AS chunkIndex, dc.createdAt AS createdAt
+        FROM DocumentChunk dc JOIN dc.document d
+        WHERE d.id = :documentId
+        ORDER BY dc.chunkIndex
+        """)
+    List<DocumentChunkView> findChunkViewsByDocumentId(@Param("documentId") Long documentId, Pageable pageable);
+    
+    /**
+     * Get the text length of each chunk of a document in order, to plan sections without loading the text.
+     */
+    @Query(value = "SELECT length(chunk_text) FROM document_chunks WHERE document_id = :documentId ORDER BY chunk_index",
+        nativeQuery = true)
+    List<Integer> findChunkLengthsByDocumentId(@Param("documentId") Long documentId);
+    
+    /**
+     * Get the text of a run of consecutive chunks of a document, starting at the given position.
      */
     @Query(value = """
-        SELECT dc.* FROM document_chunks dc 
-        WHERE dc.embedding_vector IS NOT NULL 
-        ORDER BY dc.embedding_vector <=> CAST(:queryVector AS vector) 
+        SELECT chunk_text FROM document_chunks
+        WHERE document_id = :documentId
+        ORDER BY chunk_index
+        OFFSET :offset LIMIT :limit
+        """, nativeQuery = true)
+    List<String> findChunkTexts(@Param("documentId") Long documentId, @Param("offset") int offset, @Param("limit") int limit);
+    
+    /**
+     * Check whether any chunk exists. Stops at the first row instead of counting the table.
+     */
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM document_chunks)", nativeQuery = true)
+    boolean existsAnyChunk();
+    
+    /**
+     * Full-text search over the chunk text_search column (GIN indexed), ranked with ts_rank_cd.
+     * The query must be a valid to_tsquery expression; normalization 32 maps rank into [0, 1).
+     */
+    @Query(value = """
+        SELECT dc.id AS "id", dc.document_id AS "documentId", d.filename AS "filename",
+               dc.chunk_text AS "chunkText", dc.chunk_index AS "chunkIndex", dc.created_at AS "createdAt",
+               ts_rank_cd(dc.text_search, to_tsquery('simple', :tsQuery), 32) AS "score"
+        FROM document_chunks dc
+        JOIN documents d ON d.id = dc.document_id
+        WHERE dc.text_search @@ to_tsquery('simple', :tsQuery)
+        ORDER BY "score" DESC, dc.id
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<ScoredChunkView> findChunksByTextSearch(@Param("tsQuery") String tsQuery, @Param("limit") int limit);
+    
+    /**
+     * Full-text search restricted to the chunks of the given documents, ranked like findChunksByTextSearch.
+     */
+    @Query(value = """
+        SELECT dc.id AS "id", dc.document_id AS "documentId", d.filename AS "filename",
+               dc.chunk_text AS "chunkText", dc.chunk_index AS "chunkIndex", dc.created_at AS "createdAt",
+               ts_rank_cd(dc.text_search, to_tsquery('simple', :tsQuery), 32) AS "score"
+        FROM document_chunks dc
+        JOIN documents d ON d.id = dc.document_id
+        WHERE dc.document_id IN (:documentIds)
+        AND dc.text_search @@ to_tsquery('simple', :tsQuery)
+        ORDER BY "score" DESC, dc.id
         LIMIT :limit
         """, nativeQuery = true)
-    List<DocumentChunk> findSimilarChunks(@Param("queryVector") String queryVector, @Param("limit") int limit);
+    List<ScoredChunkView> findChunksByTextSearchInDocuments(@Param("tsQuery") String tsQuery,
+                                                           @Param("documentIds") Collection<Long> documentIds,
+                                                           @Param("limit") int limit);
     
     /**
      * Find similar chunks with similarity threshold.
-     * Only returns chunks with similarity score above the threshold.
+     * Uses cosine similarity with pgvector extension; the threshold is applied in the database
+     * so weak matches never leave it. The query vector is bound in binary form, see PgVectorType.parameter.
      */
     @Query(value = """
-        SELECT dc.*, (1 - (dc.embedding_vector <=> CAST(:queryVector AS vector))) as similarity 
+        SELECT dc.id AS "id", dc.document_id AS "documentId", d.filename AS "filename",
+               dc.chunk_text AS "chunkText", dc.chunk_index AS "chunkIndex", dc.created_at AS "createdAt",
+               1 - (dc.embedding_vector <=> :queryVector) AS "score"
         FROM document_chunks dc 
+        JOIN documents d ON d.id = dc.document_id
         WHERE dc.embedding_vector IS NOT NULL 
-        AND (1 - (dc.embedding_vector <=> CAST(:queryVector AS vector))) >= :threshold
-        ORDER BY dc.embedding_vector <=> CAST(:queryVector AS vector) 
+        AND (dc.embedding_vector <=> :queryVector) <= 1 - :threshold
+        ORDER BY dc.embedding_vector <=> :queryVector 
         LIMIT :limit
         """, nativeQuery = true)
-    List<Object[]> findSimilarChunksWithScore(
-        @Param("queryVector") String queryVector, 
+    List<ScoredChunkView> findSimilarChunksWithScore(
+        @Param("queryVector") TypedParameterValue<float[]> queryVector, 
         @Param("threshold") double threshold, 
         @Param("limit") int limit
     );
     
     /**
-     * Find chunks that don't have embeddings yet.
+     * Count the chunks of the documents that have an embedding, to choose how a scoped search runs.
      */
-    @Query("SELECT dc FROM DocumentChunk dc WHERE dc.embeddingVector IS NULL")
-    List<DocumentChunk> findChunksWithoutEmbeddings();
+    @Query(value = """
+        SELECT count(*) FROM document_chunks
+        WHERE document_id IN (:documentIds) AND embedding_vector IS NOT NULL
+        """, nativeQuery = true)
+    long countEmbeddedChunksInDocuments(@Param("documentIds") Collection<Long> documentIds);
     
     /**
-     * Insert a document chunk with vector embedding using native SQL.
-     * This method properly handles the vector type casting.
+     * Find the chunks of the given documents most similar to the query vector.
+     * The nearest chunks are selected first and the threshold is applied afterwards, so an
+     * iterative HNSW scan only has to find enough rows in scope, and results returned in
+     * relaxed order are sorted again.
      */
-    @Modifying
     @Query(value = """
-        INSERT INTO document_chunks (document_id, chunk_text, chunk_index, embedding_vector, created_at) 
-        VALUES (:documentId, :chunkText, :chunkIndex, CAST(:embeddingVector AS vector), :createdAt)
+        WITH nearest AS MATERIALIZED (
+            SELECT dc.id, dc.document_id, dc.chunk_text, dc.chunk_index, dc.created_at,
+                   dc.embedding_vector <=> :queryVector AS distance
+            FROM document_chunks dc
+            WHERE dc.document_id IN (:documentIds)
+            AND dc.embedding_vector IS NOT NULL
+            ORDER BY dc.embedding_vector <=> :queryVector
+            LIMIT :limit
+        )
+        SELECT n.id AS "id", n.document_id AS "documentId", d.filename AS "filename",
+               n.chunk_text AS "chunkText", n.chunk_index AS "chunkIndex", n.created_at AS "createdAt",
+               1 - n.distance AS "score"
+        FROM nearest n
+        JOIN documents d ON d.id = n.document_id
+        WHERE n.distance <= 1 - :threshold
+        ORDER BY n.distance
         """, nativeQuery = true)
-    void insertChunkWithVector(
-        @Param("documentId") Long documentId,
-        @Param("chunkText") String chunkText, 
-        @Param("chunkIndex") Integer chunkIndex,
-        @Param("embeddingVector") String embeddingVector,
-        @Param("createdAt") java.time.LocalDateTime createdAt
+    List<ScoredChunkView> findSimilarChunksInDocuments(
+        @Param("queryVector") TypedParameterValue<float[]> queryVector,
+        @Param("documentIds") Collection<Long> documentIds,
+        @Param("threshold") double threshold,
+        @Param("limit") int limit
     );
 }
@@ -0,0 +1,52 @@
+package com.luanvv.rag.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Custom bulk operations for document chunks that are not expressible as Spring Data queries.
+ */
+public interface DocumentChunkRepositoryCustom {
+    
+    /**
+     * Insert all chunks of a document using JDBC batches.
+     * Chunks without an embedding are stored with a NULL vector.
+     */
+    void insertChunksBatch(Long documentId, List<ChunkRow> chunks, LocalDateTime createdAt);
+    
+    /**
+     * Move chunks to new positions, keyed by chunk ID.
+     */
+    void updateChunkIndexes(Map<Long, Integer> chunkIndexes);
+    
+    /**
+     * Set hnsw.ef_search and ivfflat.probes for the current transaction.
+     * Must be called inside the transaction that runs the vector search.
+     */
+    void applyVectorSearchParameters(int efSearch, int probes);
+    
+    /**
+     * Disable index scans for the current transaction, so a vector search over a small scope
+     * reads the scope's rows and computes exact distances instead of filtering the ANN result.
+     */
+    void disableIndexScan();
+    
+    /**
+     * Set hnsw.iterative_scan for the current transaction, so a filtered HNSW search keeps scanning
+     * until enough rows pass the filter. Requires pgvector 0.8 or later.
+     */
+    void applyIterativeScan(String mode);
+    
+    /**
+     * Load the embeddings of the given chunks, keyed by chunk ID. Chunks without an embedding are left out.
+     */
+    Map<Long, float[]> findEmbeddingsByIds(Collection<Long> chunkIds);
+    
+    /**
+     * A chunk row to be written by {@link #insertChunksBatch}.
+     */
+    record ChunkRow(String chunkText, int chunkIndex, float[] embedding) {
+    }
+}
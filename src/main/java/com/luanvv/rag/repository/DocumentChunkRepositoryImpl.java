@@ -0,0 +1,120 @@
+package com.luanvv.rag.repository;
+
+import com.luanvv.rag.entity.PgVectorType;
+import com.pgvector.PGvector;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC implementation of {@link DocumentChunkRepositoryCustom}.
+ * Runs on the connection of the surrounding JPA transaction.
+ */
+public class DocumentChunkRepositoryImpl implements DocumentChunkRepositoryCustom {
+    
+    private static final int INSERT_BATCH_SIZE = 250;
+    
+    private static final String INSERT_CHUNK_SQL = """
+        INSERT INTO document_chunks (document_id, chunk_text, chunk_index, embedding_vector, created_at) 
+        VALUES (?, ?, ?, ?, ?)
+        """;
+    
+    private static final String UPDATE_CHUNK_INDEX_SQL = """
+        UPDATE document_chunks SET chunk_index = ? WHERE id = ?
+        """;
+    
+    private static final String SET_SEARCH_PARAMETERS_SQL = """
+        SELECT set_config('hnsw.ef_search', ?, true), set_config('ivfflat.probes', ?, true)
+        """;
+    
+    private static final String DISABLE_INDEX_SCAN_SQL = """
+        SELECT set_config('enable_indexscan', 'off', true)
+        """;
+    
+    private static final String SET_ITERATIVE_SCAN_SQL = """
+        SELECT set_config('hnsw.iterative_scan', ?, true)
+        """;
+    
+    private static final String FIND_EMBEDDINGS_SQL = """
+        SELECT id, embedding_vector FROM document_chunks
+        WHERE id = ANY(?) AND embedding_vector IS NOT NULL
+        """;
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public DocumentChunkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    @Override
+    public void insertChunksBatch(Long documentId, List<ChunkRow> chunks, LocalDateTime createdAt) {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        Timestamp timestamp = Timestamp.valueOf(createdAt);
+        jdbcTemplate.batchUpdate(INSERT_CHUNK_SQL, chunks, INSERT_BATCH_SIZE, (ps, chunk) -> {
+            ps.setLong(1, documentId);
+            ps.setString(2, chunk.chunkText());
+            ps.setInt(3, chunk.chunkIndex());
+            if (chunk.embedding() != null) {
+                ps.setObject(4, new PGvector(chunk.embedding()));
+            } else {
+                ps.setNull(4, Types.OTHER);
+            }
+            ps.setTimestamp(5, timestamp);
+        });
+    }
+    
+    @Override
+    public void updateChunkIndexes(Map<Long, Integer> chunkIndexes) {
+        if (chunkIndexes.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(chunkIndexes.entrySet());
+        jdbcTemplate.batchUpdate(UPDATE_CHUNK_INDEX_SQL, entries, INSERT_BATCH_SIZE, (ps, entry) -> {
+            ps.setInt(1, entry.getValue());
+            ps.setLong(2, entry.getKey());
+        });
+    }
+    
+    @Override
+    public void applyVectorSearchParameters(int efSearch, int probes) {
+        jdbcTemplate.queryForList(SET_SEARCH_PARAMETERS_SQL, String.valueOf(efSearch), String.valueOf(probes));
+    }
+    
+    @Override
+    public void disableIndexScan() {
+        jdbcTemplate.queryForList(DISABLE_INDEX_SCAN_SQL);
+    }
+    
+    @Override
+    public void applyIterativeScan(String mode) {
+        jdbcTemplate.queryForList(SET_ITERATIVE_SCAN_SQL, mode);
+    }
+    
+    @Override
+    public Map<Long, float[]> findEmbeddingsByIds(Collection<Long> chunkIds) {
+        Map<Long, float[]> embeddings = new HashMap<>();
+        if (chunkIds.isEmpty()) {
+            return embeddings;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(FIND_EMBEDDINGS_SQL);
+            Array ids = connection.createArrayOf("bigint", chunkIds.toArray());
+            ps.setArray(1, ids);
+            return ps;
+        }, rs -> {
+            embeddings.put(rs.getLong(1), PgVectorType.toEmbedding(rs.getObject(2)));
+        });
+        return embeddings;
+    }
+}
@@ -0,0 +1,22 @@
+package com.luanvv.rag.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a document chunk without its embedding vector.
+ * Used for retrieval and display, where the vector itself is never needed.
+ */
+public interface DocumentChunkView {
+    
+    Long getId();
+    
+    Long getDocumentId();
+    
+    String getFilename();
+    
+    String getChunkText();
+    
+    Integer getChunkIndex();
+    
+    LocalDateTime getCreatedAt();
+}
@@ -0,0 +1,16 @@
+package com.luanvv.rag.repository;
+
+/**
+ * Identity of a document referenced by a question, without its extracted text.
+ */
+public interface DocumentReferenceView {
+    
+    Long getId();
+    
+    String getFilename();
+    
+    /**
+     * ID of the document that owns the chunks, different from the ID for duplicate uploads.
+     */
+    Long getContentDocumentId();
+}
@@ -2,11 +2,14 @@ package com.luanvv.rag.repository;
 
 import com.luanvv.rag.entity.Document;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -47,11 +50,44 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
     @Query("SELECT COALESCE(SUM(d.fileSize), 0) FROM Document d")
     long getTotalFileSize();
 
+    /**
+     * Find processed documents by ID or filename, without loading their text.
+     * Duplicate uploads report the document that owns their chunks as contentDocumentId.
+     */
     @Query("""
-        SELECT new com.luanvv.rag.entity.Document(d.id, d.filename, d.extractedText)
+        SELECT d.id AS id, d.filename AS filename, COALESCE(d.sourceDocumentId, d.id) AS contentDocumentId
             FROM Document d
             WHERE d.extractedText IS NOT NULL
             AND (d.id IN :documentIds OR d.filename IN :documentNames)
+            ORDER BY d.id
     """)
-    List<Document> getDocumentExtractedTextByIdsOrNames(Set<Integer> documentIds, Set<String> documentNames);
+    List<DocumentReferenceView> findReferencedDocuments(Set<Integer> documentIds, Set<String> documentNames);
+
+    /**
+     * Get the filenames of all documents.
+     */
+    @Query("SELECT d.filename FROM Document d")
+    List<String> findAllFilenames();
+
+    /**
+     * Find the oldest document with the given content hash and status.
+     */
+    Optional<Document> findFirstByContentHashAndStatusOrderByIdAsc(String contentHash, Document.DocumentStatus status);
+
+    /**
+     * Find the duplicate uploads linked to a document, oldest first.
+     */
+    List<Document> findBySourceDocumentIdOrderByIdAsc(Long sourceDocumentId);
+
+    /**
+     * Check whether a document other than the given one uses the stored file; duplicates share it.
+     */
+    boolean existsByFilePathAndIdNot(String filePath, Long id);
+
+    /**
+     * Point the duplicates of one document at another.
+     */
+    @Modifying
+    @Query("UPDATE Document d SET d.sourceDocumentId = :targetDocumentId WHERE d.sourceDocumentId = :sourceDocumentId")
+    int relinkDuplicates(@Param("sourceDocumentId") Long sourceDocumentId, @Param("targetDocumentId") Long targetDocumentId);
 }
@@ -0,0 +1,90 @@
+package com.luanvv.rag.repository;
+
+import com.luanvv.rag.entity.PgVectorType;
+import com.pgvector.PGvector;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC access to the persistent embedding cache, keyed by (model, SHA-256 of text).
+ */
+@Repository
+public class EmbeddingCacheRepository {
+    
+    private static final int INSERT_BATCH_SIZE = 250;
+    
+    private static final String FIND_SQL = """
+        SELECT text_hash, embedding FROM embedding_cache
+        WHERE model = ? AND text_hash = ANY(?)
+        """;
+    
+    private static final String INSERT_SQL = """
+        INSERT INTO embedding_cache (model, text_hash, embedding, created_at)
+        VALUES (?, ?, ?, ?)
+        ON CONFLICT (model, text_hash) DO NOTHING
+        """;
+    
+    private static final String PRUNE_SQL = """
+        DELETE FROM embedding_cache WHERE created_at < ?
+        """;
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public EmbeddingCacheRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    /**
+     * Find cached embeddings of the model for the given text hashes, keyed by hash.
+     */
+    public Map<String, float[]> findEmbeddings(String model, Collection<String> textHashes) {
+        Map<String, float[]> embeddings = new HashMap<>();
+        if (textHashes.isEmpty()) {
+            return embeddings;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(FIND_SQL);
+            Array hashes = connection.createArrayOf("text", textHashes.toArray());
+            ps.setString(1, model);
+            ps.setArray(2, hashes);
+            return ps;
+        }, rs -> {
+            embeddings.put(rs.getString(1), PgVectorType.toEmbedding(rs.getObject(2)));
+        });
+        return embeddings;
+    }
+    
+    /**
+     * Store embeddings keyed by text hash. Entries that already exist are left unchanged.
+     */
+    public void saveEmbeddings(String model, Map<String, float[]> embeddingsByHash, LocalDateTime createdAt) {
+        if (embeddingsByHash.isEmpty()) {
+            return;
+        }
+        Timestamp timestamp = Timestamp.valueOf(createdAt);
+        List<Map.Entry<String, float[]>> entries = new ArrayList<>(embeddingsByHash.entrySet());
+        jdbcTemplate.batchUpdate(INSERT_SQL, entries, INSERT_BATCH_SIZE, (ps, entry) -> {
+            ps.setString(1, model);
+            ps.setString(2, entry.getKey());
+            ps.setObject(3, new PGvector(entry.getValue()));
+            ps.setTimestamp(4, timestamp);
+        });
+    }
+    
+    /**
+     * Delete the entries of every model created before the cutoff. Returns the number of deleted entries.
+     */
+    public int deleteCreatedBefore(LocalDateTime cutoff) {
+        return jdbcTemplate.update(PRUNE_SQL, Timestamp.valueOf(cutoff));
+    }
+}
@@ -1,6 +1,7 @@
 package com.luanvv.rag.repository;
 
 import com.luanvv.rag.entity.QueryHistory;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -19,6 +20,11 @@ public interface QueryHistoryRepository extends JpaRepository<QueryHistory, Long
      */
     List<QueryHistory> findAllByOrderByQueryDateDesc();
     
+    /**
+     * Find the most recent queries, limited by the page size.
+     */
+    List<QueryHistory> findAllByOrderByQueryDateDesc(Pageable pageable);
+    
     /**
      * Find recent query history within the last N days.
      */
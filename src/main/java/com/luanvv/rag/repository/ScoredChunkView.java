@@ -0,0 +1,9 @@
+package com.luanvv.rag.repository;
+
+/**
+ * Chunk projection with the similarity score computed by the retrieval query.
+ */
+public interface ScoredChunkView extends DocumentChunkView {
+    
+    Double getScore();
+}
@@ -0,0 +1,194 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.repository.EmbeddingCacheRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Two-tier embedding cache in front of {@link EmbeddingService}.
+ * Texts are keyed by the SHA-256 of their content: a bounded in-memory LRU is checked first,
+ * then the embedding_cache table for the configured model, and only the remaining texts
+ * are sent to the model.
+ */
+@Service
+@Primary
+public class CachingEmbeddingProvider implements EmbeddingProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingEmbeddingProvider.class);
+    private static final Duration PRUNE_INTERVAL = Duration.ofHours(1);
+
+    private final EmbeddingService embeddingService;
+    private final EmbeddingCacheRepository embeddingCacheRepository;
+    private final AppProperties appProperties;
+    private final TransactionTemplate cacheTransaction;
+    private final String model;
+    private final Map<String, float[]> memoryCache = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicReference<LocalDateTime> nextPrune = new AtomicReference<>(LocalDateTime.MIN);
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+
+    public CachingEmbeddingProvider(EmbeddingService embeddingService,
+                                    EmbeddingCacheRepository embeddingCacheRepository,
+                                    AppProperties appProperties,
+                                    PlatformTransactionManager transactionManager,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${spring.ai.ollama.embedding.options.model:default}") String model) {
+        this.embeddingService = embeddingService;
+        this.embeddingCacheRepository = embeddingCacheRepository;
+        this.appProperties = appProperties;
+        // Cache reads and writes must never fail the caller's transaction
+        this.cacheTransaction = new TransactionTemplate(transactionManager);
+        this.cacheTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.model = model;
+        this.memoryHits = Counter.builder("rag.embedding.cache.lookups").tag("result", "memory")
+            .description("Embedding cache lookups").register(meterRegistry);
+        this.databaseHits = Counter.builder("rag.embedding.cache.lookups").tag("result", "database")
+            .description("Embedding cache lookups").register(meterRegistry);
+        this.misses = Counter.builder("rag.embedding.cache.lookups").tag("result", "miss")
+            .description("Embedding cache lookups").register(meterRegistry);
+    }
+
+    @Override
+    public float[] generateEmbedding(String text) {
+        if (!appProperties.getEmbedding().isCacheEnabled() || text == null || text.trim().isEmpty()) {
+            return embeddingService.generateEmbedding(text);
+        }
+        return generateEmbeddings(List.of(text)).get(0);
+    }
+
+    @Override
+    public List<float[]> generateEmbeddings(List<String> texts) {
+        if (!appProperties.getEmbedding().isCacheEnabled() || texts == null || texts.isEmpty()) {
+            return embeddingService.generateEmbeddings(texts);
+        }
+
+        List<String> hashes = texts.stream().map(CachingEmbeddingProvider::sha256).toList();
+        Map<String, float[]> found = findInMemory(hashes);
+        memoryHits.increment(found.size());
+
+        // Unique hashes still missing, in input order
+        Map<String, String> missingTexts = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (!found.containsKey(hashes.get(i))) {
+                missingTexts.putIfAbsent(hashes.get(i), texts.get(i));
+            }
+        }
+
+        if (!missingTexts.isEmpty() && appProperties.getEmbedding().isPersistentCacheEnabled()) {
+            Map<String, float[]> stored = findInDatabase(missingTexts.keySet());
+            databaseHits.increment(stored.size());
+            putInMemory(stored);
+            found.putAll(stored);
+            missingTexts.keySet().removeAll(stored.keySet());
+        }
+
+        if (!missingTexts.isEmpty()) {
+            misses.increment(missingTexts.size());
+            List<float[]> computed = embeddingService.generateEmbeddings(new ArrayList<>(missingTexts.values()));
+            Map<String, float[]> computedByHash = new LinkedHashMap<>();
+            int index = 0;
+            for (String hash : missingTexts.keySet()) {
+                computedByHash.put(hash, computed.get(index++));
+            }
+            putInMemory(computedByHash);
+            if (appProperties.getEmbedding().isPersistentCacheEnabled()) {
+                saveInDatabase(computedByHash);
+            }
+            found.putAll(computedByHash);
+        }
+
+        logger.debug("Embedded {} texts with {} model calls", texts.size(), missingTexts.size());
+        return hashes.stream().map(found::get).toList();
+    }
+
+    private synchronized Map<String, float[]> findInMemory(List<String> hashes) {
+        Map<String, float[]> found = new LinkedHashMap<>();
+        for (String hash : hashes) {
+            float[] embedding = memoryCache.get(hash);
+            if (embedding != null) {
+                found.put(hash, embedding);
+            }
+        }
+        return found;
+    }
+
+    private synchronized void putInMemory(Map<String, float[]> embeddingsByHash) {
+        memoryCache.putAll(embeddingsByHash);
+        int maxEntries = appProperties.getEmbedding().getCacheMaxEntries();
+        Iterator<Map.Entry<String, float[]>> iterator = memoryCache.entrySet().iterator();
+        while (memoryCache.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private Map<String, float[]> findInDatabase(Set<String> hashes) {
+        try {
+            return cacheTransaction.execute(status -> embeddingCacheRepository.findEmbeddings(model, hashes));
+        } catch (Exception e) {
+            logger.warn("Failed to read embedding cache table: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private void saveInDatabase(Map<String, float[]> embeddingsByHash) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            cacheTransaction.executeWithoutResult(status ->
+                embeddingCacheRepository.saveEmbeddings(model, embeddingsByHash, now));
+        } catch (Exception e) {
+            logger.warn("Failed to write embedding cache table: {}", e.getMessage());
+        }
+        pruneDatabase(now);
+    }
+
+    /**
+     * Delete table entries older than the TTL, at most once per interval across all callers.
+     */
+    private void pruneDatabase(LocalDateTime now) {
+        LocalDateTime due = nextPrune.get();
+        if (now.isBefore(due) || !nextPrune.compareAndSet(due, now.plus(PRUNE_INTERVAL))) {
+            return;
+        }
+        LocalDateTime cutoff = now.minus(appProperties.getEmbedding().getPersistentCacheTtl());
+        try {
+            Integer deleted = cacheTransaction.execute(status -> embeddingCacheRepository.deleteCreatedBefore(cutoff));
+            logger.info("Pruned {} embedding cache entries created before {}", deleted, cutoff);
+        } catch (Exception e) {
+            logger.warn("Failed to prune embedding cache table: {}", e.getMessage());
+        }
+    }
+
+    static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
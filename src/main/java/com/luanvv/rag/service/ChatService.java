@@ -2,12 +2,14 @@ package com.luanvv.rag.service;
 
 import com.luanvv.rag.entity.ChatMessage;
 import com.luanvv.rag.repository.ChatMessageRepository;
+import com.luanvv.rag.service.ModelCallLimiter.ModelType;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 
 /**
  * Spring AI implementation for chat completion service with custom instructions and JDBC chat memory.
@@ -19,12 +21,13 @@ public class ChatService {
     
     private final ChatClient chatClient;
     private final ChatMessageRepository chatMessageRepository;
-
-
+    private final ModelCallLimiter modelCallLimiter;
     
-    public ChatService(ChatClient chatClient, ChatMessageRepository chatMessageRepository) {
+    public ChatService(ChatClient chatClient, ChatMessageRepository chatMessageRepository,
+                       ModelCallLimiter modelCallLimiter) {
         this.chatMessageRepository = chatMessageRepository;
         this.chatClient = chatClient;
+        this.modelCallLimiter = modelCallLimiter;
     }
     
 //    /**
@@ -126,7 +129,7 @@ public class ChatService {
         
         try {
             // Use ChatClient with system instruction
-            String response = chatClient.prompt()
+            String response = modelCallLimiter.call(ModelType.CHAT, () -> chatClient.prompt()
                     .user(u -> {
                         u.text(prompt);
                         if (format != null && !format.trim().isEmpty()) {
@@ -134,7 +137,7 @@ public class ChatService {
                         }
                     })
                     .call()
-                    .content();
+                    .content());
             
             // Clean the response to remove thinking tags
             String cleanedResponse = cleanThinkingTags(response);
@@ -142,6 +145,8 @@ public class ChatService {
             logger.debug("Generated response with {} characters", cleanedResponse.length());
             return cleanedResponse;
             
+        } catch (ModelBusyException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error generating chat response: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to generate chat response", e);
@@ -151,6 +156,27 @@ public class ChatService {
     public String generateResponse(String prompt) {
         return generateResponse(prompt, null);
     }
+
+    /**
+     * Stream a chat response token by token.
+     * Thinking spans are removed as they stream, so only visible text is emitted.
+     */
+    public Flux<String> streamResponse(String prompt) {
+        if (prompt == null || prompt.trim().isEmpty()) {
+            throw new IllegalArgumentException("Prompt cannot be null or empty");
+        }
+
+        return Flux.defer(() -> {
+            ThinkingTagFilter filter = new ThinkingTagFilter();
+            return modelCallLimiter.stream(ModelType.CHAT, () -> chatClient.prompt()
+                    .user(prompt)
+                    .stream()
+                    .content())
+                    .map(filter::accept)
+                    .concatWith(Flux.defer(() -> Flux.just(filter.finish())))
+                    .filter(text -> !text.isEmpty());
+        }).doOnError(e -> logger.error("Error streaming chat response: {}", e.getMessage()));
+    }
     
     /**
      * Generate a response with custom system instructions and user prompt.
@@ -161,11 +187,11 @@ public class ChatService {
         }
         
         try {
-            String response = chatClient.prompt()
+            String response = modelCallLimiter.call(ModelType.CHAT, () -> chatClient.prompt()
                     .system(systemMessage)
                     .user(userPrompt)
                     .call()
-                    .content();
+                    .content());
             
             // Clean the response to remove thinking tags
             String cleanedResponse = cleanThinkingTags(response);
@@ -173,6 +199,8 @@ public class ChatService {
             logger.debug("Generated response with {} characters", cleanedResponse.length());
             return cleanedResponse;
             
+        } catch (ModelBusyException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error generating chat response with context: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to generate chat response with context", e);
@@ -192,10 +220,10 @@ public class ChatService {
                         temperature, topP, topK);
             
             // Use ChatClient with custom options (simplified for compatibility)
-            String response = chatClient.prompt()
+            String response = modelCallLimiter.call(ModelType.CHAT, () -> chatClient.prompt()
                     .user(prompt)
                     .call()
-                    .content();
+                    .content());
             
             // Note: Custom options like temperature can be set in application.properties
             // or through model-specific configuration
@@ -206,6 +234,8 @@ public class ChatService {
             logger.debug("Generated response with custom options, {} characters", cleanedResponse.length());
             return cleanedResponse;
             
+        } catch (ModelBusyException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error generating chat response with custom options: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to generate chat response with custom options", e);
@@ -222,32 +252,13 @@ public class ChatService {
             return response;
         }
         
-        // Remove <think>...</think> tags and their content
-        String cleaned = response.replaceAll("(?s)<think>.*?</think>", "");
-        
-        // Remove <thinking>...</thinking> tags and their content
-        cleaned = cleaned.replaceAll("(?s)<thinking>.*?</thinking>", "");
-        
-        // Remove any other common thinking-related XML tags
-        cleaned = cleaned.replaceAll("(?s)<thought>.*?</thought>", "");
-        cleaned = cleaned.replaceAll("(?s)<reasoning>.*?</reasoning>", "");
-        cleaned = cleaned.replaceAll("(?s)<analysis>.*?</analysis>", "");
-        
-        // Remove any standalone opening or closing tags that might be left
-        cleaned = cleaned.replaceAll("</?think>", "");
-        cleaned = cleaned.replaceAll("</?thinking>", "");
-        cleaned = cleaned.replaceAll("</?thought>", "");
-        cleaned = cleaned.replaceAll("</?reasoning>", "");
-        cleaned = cleaned.replaceAll("</?analysis>", "");
-        
-        // Clean up any extra whitespace that might be left
-        cleaned = cleaned.replaceAll("\\n\\s*\\n\\s*\\n", "\n\n");
-        cleaned = cleaned.trim();
+        ThinkingTagFilter filter = new ThinkingTagFilter();
+        String cleaned = filter.accept(response) + filter.finish();
         
         // Log if we removed thinking tags
-        if (!cleaned.equals(response)) {
-            logger.debug("Removed thinking tags from response. Original length: {}, Cleaned length: {}", 
-                        response.length(), cleaned.length());
+        if (filter.getRemovedSpans() > 0) {
+            logger.debug("Removed {} thinking spans from response. Original length: {}, Cleaned length: {}", 
+                        filter.getRemovedSpans(), response.length(), cleaned.length());
         }
         
         return cleaned;
@@ -0,0 +1,57 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.repository.DocumentChunkView;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between the chunks stored for a document and a fresh chunking of its text.
+ * Chunks are matched by content, so an unchanged chunk keeps its row and embedding
+ * even when edits elsewhere shift its position.
+ */
+public record ChunkDiff(Map<Long, Integer> movedChunks, List<Long> staleChunkIds,
+                        Map<Integer, String> addedChunks, int unchangedCount) {
+
+    /**
+     * Match the new chunks against the stored ones.
+     */
+    public static ChunkDiff of(List<DocumentChunkView> existingChunks, List<String> newChunks) {
+        Map<String, Deque<DocumentChunkView>> existingByText = new HashMap<>();
+        for (DocumentChunkView chunk : existingChunks) {
+            existingByText.computeIfAbsent(chunk.getChunkText(), text -> new ArrayDeque<>()).add(chunk);
+        }
+
+        Map<Long, Integer> movedChunks = new LinkedHashMap<>();
+        Map<Integer, String> addedChunks = new LinkedHashMap<>();
+        int unchangedCount = 0;
+        for (int chunkIndex = 0; chunkIndex < newChunks.size(); chunkIndex++) {
+            String text = newChunks.get(chunkIndex);
+            Deque<DocumentChunkView> matches = existingByText.get(text);
+            DocumentChunkView match = matches != null ? matches.poll() : null;
+            if (match == null) {
+                addedChunks.put(chunkIndex, text);
+            } else if (match.getChunkIndex() == null || match.getChunkIndex() != chunkIndex) {
+                movedChunks.put(match.getId(), chunkIndex);
+            } else {
+                unchangedCount++;
+            }
+        }
+
+        List<Long> staleChunkIds = new ArrayList<>();
+        existingByText.values().forEach(remaining -> remaining.forEach(chunk -> staleChunkIds.add(chunk.getId())));
+        return new ChunkDiff(movedChunks, staleChunkIds, addedChunks, unchangedCount);
+    }
+
+    /**
+     * Texts of the chunks that need an embedding, in chunk order.
+     */
+    public List<String> addedTexts() {
+        return new ArrayList<>(addedChunks.values());
+    }
+}
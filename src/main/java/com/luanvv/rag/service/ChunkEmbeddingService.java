@@ -0,0 +1,92 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+
+/**
+ * Embeds document chunks in batches through {@link EmbeddingProvider#generateEmbeddings(List)}.
+ * Batches run on a bounded pool; a failed batch is split in half and retried so only
+ * the chunks that really fail end up without an embedding.
+ */
+@Service
+public class ChunkEmbeddingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkEmbeddingService.class);
+
+    private final EmbeddingProvider embeddingProvider;
+    private final ThreadPoolTaskExecutor embeddingBatchExecutor;
+    private final ModelCallLimiter modelCallLimiter;
+    private final AppProperties appProperties;
+
+    public ChunkEmbeddingService(EmbeddingProvider embeddingProvider,
+                                 @Qualifier("embeddingBatchExecutor") ThreadPoolTaskExecutor embeddingBatchExecutor,
+                                 ModelCallLimiter modelCallLimiter,
+                                 AppProperties appProperties) {
+        this.embeddingProvider = embeddingProvider;
+        this.embeddingBatchExecutor = embeddingBatchExecutor;
+        this.modelCallLimiter = modelCallLimiter;
+        this.appProperties = appProperties;
+    }
+
+    /**
+     * Embed all chunks, preserving order. Entries are null for chunks that could not be embedded.
+     * The callback receives the number of chunks finished by each completed batch.
+     */
+    public List<float[]> embedChunks(List<String> chunks, IntConsumer onBatchCompleted) {
+        if (chunks.isEmpty()) {
+            return List.of();
+        }
+
+        int batchSize = Math.max(1, appProperties.getEmbedding().getBatchSize());
+        float[][] embeddings = new float[chunks.size()][];
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int start = 0; start < chunks.size(); start += batchSize) {
+            int from = start;
+            int to = Math.min(start + batchSize, chunks.size());
+            futures.add(CompletableFuture.runAsync(() -> {
+                embedRange(chunks, from, to, embeddings);
+                onBatchCompleted.accept(to - from);
+            }, embeddingBatchExecutor));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        logger.debug("Embedded {} chunks in {} batches of up to {}", chunks.size(), futures.size(), batchSize);
+        return Arrays.asList(embeddings);
+    }
+
+    /**
+     * Embed chunks[from, to) into the result array, splitting the range on failure.
+     * Retries run on the current thread so a failing batch never waits for a free pool slot.
+     */
+    private void embedRange(List<String> chunks, int from, int to, float[][] embeddings) {
+        try {
+            // Ingestion yields to query embeddings at the model
+            List<float[]> batch = modelCallLimiter.inBackground(
+                () -> embeddingProvider.generateEmbeddings(chunks.subList(from, to)));
+            for (int i = 0; i < batch.size(); i++) {
+                embeddings[from + i] = batch.get(i);
+            }
+        } catch (Exception e) {
+            if (to - from == 1) {
+                logger.warn("Failed to generate embedding for chunk {}: {}", from, e.getMessage());
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            logger.warn("Embedding batch [{}, {}) failed, retrying as two halves: {}", from, to, e.getMessage());
+            embedRange(chunks, from, mid, embeddings);
+            embedRange(chunks, mid, to, embeddings);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.luanvv.rag.service;
+
+import java.util.List;
+
+/**
+ * A strategy for finding the chunks most relevant to a search query.
+ */
+public interface ChunkRetriever {
+    
+    /**
+     * Retrieve up to limit chunks, best match first.
+     */
+    List<RetrievedChunk> retrieve(String searchQuery, int limit);
+}
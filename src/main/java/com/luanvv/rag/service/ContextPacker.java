@@ -0,0 +1,152 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Packs retrieved chunks into the prompt context within a token budget.
+ * Chunks that are adjacent in the same document are merged into one span without the text
+ * the chunker repeats between them, spans are ordered by their best score, and spans are
+ * added until the next one would exceed the budget.
+ */
+@Component
+public class ContextPacker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextPacker.class);
+
+    /**
+     * Rough characters per token for the chat model, used instead of running its tokenizer.
+     */
+    static final int CHARS_PER_TOKEN = 4;
+    /**
+     * Shorter common text between adjacent chunks is treated as a coincidence, not as overlap.
+     */
+    private static final int MIN_OVERLAP_CHARS = 10;
+
+    private final AppProperties appProperties;
+
+    public ContextPacker(AppProperties appProperties) {
+        this.appProperties = appProperties;
+    }
+
+    /**
+     * A run of adjacent chunks of one document, with the best score among them.
+     */
+    private record Span(String filename, StringBuilder text, double score, Integer lastChunkIndex) {
+
+        String render() {
+            return String.format(Locale.ROOT, "[%s, relevance %.2f]\n", filename, score) + text;
+        }
+    }
+
+    /**
+     * Build the context text from the chunks, best spans first.
+     */
+    public String pack(List<RetrievedChunk> chunks) {
+        int tokenBudget = appProperties.getQuery().getContextTokenBudget();
+        List<Span> spans = mergeAdjacent(chunks);
+        spans.sort(Comparator.comparingDouble(Span::score).reversed());
+
+        StringBuilder context = new StringBuilder();
+        int usedTokens = 0;
+        int packedSpans = 0;
+        for (Span span : spans) {
+            String rendered = span.render();
+            int tokens = estimateTokens(rendered);
+            if (usedTokens + tokens > tokenBudget) {
+                if (packedSpans == 0) {
+                    // Keep the best span even when it alone exceeds the budget, cut at a word boundary
+                    rendered = truncate(rendered, tokenBudget * CHARS_PER_TOKEN);
+                    context.append(rendered);
+                    usedTokens = estimateTokens(rendered);
+                    packedSpans++;
+                }
+                break;
+            }
+            context.append(rendered).append("\n\n");
+            usedTokens += tokens;
+            packedSpans++;
+        }
+
+        logger.debug("Packed {} of {} spans from {} chunks into about {} tokens",
+            packedSpans, spans.size(), chunks.size(), usedTokens);
+        return context.toString().trim();
+    }
+
+    /**
+     * Estimated number of tokens of the text.
+     */
+    public static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private List<Span> mergeAdjacent(List<RetrievedChunk> chunks) {
+        Map<Long, List<RetrievedChunk>> byDocument = new LinkedHashMap<>();
+        Set<Long> seenChunkIds = new HashSet<>();
+        for (RetrievedChunk chunk : chunks) {
+            if (chunk.id() == null || seenChunkIds.add(chunk.id())) {
+                byDocument.computeIfAbsent(chunk.documentId(), id -> new ArrayList<>()).add(chunk);
+            }
+        }
+
+        int maxOverlap = appProperties.getDocument().getChunkOverlap();
+        List<Span> spans = new ArrayList<>();
+        for (List<RetrievedChunk> documentChunks : byDocument.values()) {
+            documentChunks.sort(Comparator.comparing(RetrievedChunk::chunkIndex,
+                Comparator.nullsLast(Comparator.naturalOrder())));
+            Span current = null;
+            for (RetrievedChunk chunk : documentChunks) {
+                if (current != null && current.lastChunkIndex() != null && chunk.chunkIndex() != null
+                        && chunk.chunkIndex() == current.lastChunkIndex() + 1) {
+                    int overlap = overlapLength(current.text(), chunk.chunkText(), maxOverlap);
+                    current.text().append(overlap > 0 ? "" : "\n").append(chunk.chunkText(), overlap, chunk.chunkText().length());
+                    current = new Span(current.filename(), current.text(),
+                        Math.max(current.score(), chunk.score()), chunk.chunkIndex());
+                    spans.set(spans.size() - 1, current);
+                } else {
+                    current = new Span(chunk.filename(), new StringBuilder(chunk.chunkText()), chunk.score(),
+                        chunk.chunkIndex());
+                    spans.add(current);
+                }
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Length of the longest start of the next chunk that the previous text ends with, up to the chunk overlap.
+     */
+    static int overlapLength(CharSequence previous, String next, int maxOverlap) {
+        int limit = Math.min(Math.min(previous.length(), next.length()), maxOverlap);
+        for (int length = limit; length >= MIN_OVERLAP_CHARS; length--) {
+            int offset = previous.length() - length;
+            boolean matches = true;
+            for (int i = 0; i < length && matches; i++) {
+                matches = previous.charAt(offset + i) == next.charAt(i);
+            }
+            if (matches) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    private static String truncate(String text, int maxChars) {
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        int cut = text.lastIndexOf(' ', maxChars);
+        return text.substring(0, cut > 0 ? cut : maxChars);
+    }
+}
@@ -0,0 +1,11 @@
+package com.luanvv.rag.service;
+
+/**
+ * Thrown when a document cannot be changed because it is still being processed.
+ */
+public class DocumentBusyException extends RuntimeException {
+
+    public DocumentBusyException(String message) {
+        super(message);
+    }
+}
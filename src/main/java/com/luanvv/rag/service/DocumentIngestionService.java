@@ -0,0 +1,322 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.entity.Document;
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import com.luanvv.rag.repository.DocumentChunkRepositoryCustom;
+import com.luanvv.rag.repository.DocumentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background ingestion pipeline: extract text, chunk, embed and persist uploaded documents.
+ * Work runs on a bounded worker pool; uploads are rejected once all slots are taken.
+ */
+@Service
+public class DocumentIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentIngestionService.class);
+
+    private final DocumentRepository documentRepository;
+    private final DocumentChunkRepository documentChunkRepository;
+    private final TextExtractionService textExtractionService;
+    private final DocumentChunkingService documentChunkingService;
+    private final ChunkEmbeddingService chunkEmbeddingService;
+    private final SemanticAnswerCache answerCache;
+    private final ThreadPoolTaskExecutor ingestionExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final Semaphore slots;
+    private final Map<Long, IngestionProgress> progressByDocument = new ConcurrentHashMap<>();
+
+    public DocumentIngestionService(DocumentRepository documentRepository,
+                                    DocumentChunkRepository documentChunkRepository,
+                                    TextExtractionService textExtractionService,
+                                    DocumentChunkingService documentChunkingService,
+                                    ChunkEmbeddingService chunkEmbeddingService,
+                                    SemanticAnswerCache answerCache,
+                                    @Qualifier("ingestionExecutor") ThreadPoolTaskExecutor ingestionExecutor,
+                                    PlatformTransactionManager transactionManager,
+                                    AppProperties appProperties) {
+        this.documentRepository = documentRepository;
+        this.documentChunkRepository = documentChunkRepository;
+        this.textExtractionService = textExtractionService;
+        this.documentChunkingService = documentChunkingService;
+        this.chunkEmbeddingService = chunkEmbeddingService;
+        this.answerCache = answerCache;
+        this.ingestionExecutor = ingestionExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        AppProperties.Ingestion ingestion = appProperties.getIngestion();
+        this.slots = new Semaphore(ingestion.getWorkerThreads() + ingestion.getQueueCapacity());
+    }
+
+    /**
+     * Reserve a pipeline slot before accepting an upload.
+     * Throws IngestionQueueFullException when every worker is busy and the queue is full.
+     */
+    public void reserveSlot() {
+        if (!slots.tryAcquire()) {
+            throw new IngestionQueueFullException("Document processing queue is full, please retry later");
+        }
+    }
+
+    /**
+     * Release a slot reserved with {@link #reserveSlot()} that will not be submitted.
+     */
+    public void releaseSlot() {
+        slots.release();
+    }
+
+    /**
+     * Reserve a pipeline slot for re-processing an existing document.
+     * The document is marked as queued atomically, so two concurrent callers cannot both reserve it:
+     * throws DocumentBusyException while it is queued or processing, and IngestionQueueFullException
+     * when no slot is free. Release with {@link #releaseDocument} when it will not be submitted.
+     */
+    public void reserveDocument(Long documentId) {
+        IngestionProgress queued = new IngestionProgress(IngestionStage.QUEUED);
+        if (progressByDocument.putIfAbsent(documentId, queued) != null) {
+            throw new DocumentBusyException("Document is still being processed, please retry later");
+        }
+        try {
+            reserveSlot();
+        } catch (RuntimeException e) {
+            progressByDocument.remove(documentId, queued);
+            throw e;
+        }
+    }
+
+    /**
+     * Release a document reserved with {@link #reserveDocument} that will not be submitted.
+     */
+    public void releaseDocument(Long documentId) {
+        progressByDocument.remove(documentId);
+        slots.release();
+    }
+
+    /**
+     * Queue a document for processing using a previously reserved slot.
+     * When called inside a transaction the work is handed to the pool only after commit,
+     * so workers never see an uncommitted document row.
+     */
+    public void submit(Long documentId) {
+        progressByDocument.put(documentId, new IngestionProgress(IngestionStage.QUEUED));
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        dispatch(documentId);
+                    } else {
+                        progressByDocument.remove(documentId);
+                        slots.release();
+                    }
+                }
+            });
+        } else {
+            dispatch(documentId);
+        }
+    }
+
+    /**
+     * Get in-flight progress for a document, empty once processing has finished.
+     */
+    public Optional<IngestionProgress> getProgress(Long documentId) {
+        return Optional.ofNullable(progressByDocument.get(documentId));
+    }
+
+    private void dispatch(Long documentId) {
+        try {
+            ingestionExecutor.execute(() -> {
+                try {
+                    processDocument(documentId);
+                } finally {
+                    progressByDocument.remove(documentId);
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            logger.error("Failed to dispatch document {} for processing", documentId, e);
+            progressByDocument.remove(documentId);
+            slots.release();
+            markError(documentId);
+        }
+    }
+
+    /**
+     * Process document: extract text, chunk, and generate embeddings.
+     * Only the status updates and the final chunk write touch the database.
+     * When the document already has chunks (a replaced file) only new or changed chunks are embedded.
+     */
+    void processDocument(Long documentId) {
+        Document document = documentRepository.findById(documentId).orElse(null);
+        if (document == null) {
+            logger.warn("Document {} was deleted before processing started", documentId);
+            return;
+        }
+
+        IngestionProgress progress = progressByDocument.computeIfAbsent(documentId,
+            id -> new IngestionProgress(IngestionStage.QUEUED));
+        logger.info("Processing document: {}", document.getFilename());
+
+        try {
+            document.setStatus(Document.DocumentStatus.PROCESSING);
+            document = documentRepository.save(document);
+
+            // Extract text
+            progress.setStage(IngestionStage.EXTRACTING);
+            Path filePath = Paths.get(document.getFilePath());
+            String extractedText = textExtractionService.extractText(filePath, document.getContentType());
+
+            if (extractedText.isEmpty()) {
+                logger.warn("No text extracted from document: {}", document.getFilename());
+                markError(documentId);
+                return;
+            }
+
+            // Chunk text
+            progress.setStage(IngestionStage.CHUNKING);
+            List<String> chunks = documentChunkingService.chunkText(extractedText).stream()
+                .filter(documentChunkingService::isValidChunk)
+                .toList();
+            
+            // Only chunks that are not stored yet need an embedding (all of them on first ingestion)
+            ChunkDiff plannedDiff = ChunkDiff.of(documentChunkRepository.findChunkViewsByDocumentId(documentId), chunks);
+            List<String> textsToEmbed = plannedDiff.addedTexts();
+            progress.setTotalChunks(textsToEmbed.size());
+            
+            // Generate embeddings
+            progress.setStage(IngestionStage.EMBEDDING);
+            List<float[]> embeddings = chunkEmbeddingService.embedChunks(textsToEmbed, progress::addProcessedChunks);
+            Map<String, float[]> embeddingsByText = new HashMap<>();
+            for (int i = 0; i < textsToEmbed.size(); i++) {
+                embeddingsByText.putIfAbsent(textsToEmbed.get(i), embeddings.get(i));
+            }
+            
+            // Apply the chunk changes and final status in one short transaction
+            progress.setStage(IngestionStage.PERSISTING);
+            persistChunks(documentId, extractedText, chunks, embeddingsByText);
+            answerCache.invalidateDocument(documentId);
+            
+            logger.info("Document processed successfully: {} chunks created", chunks.size());
+
+        } catch (Exception e) {
+            logger.error("Error processing document: {}", document.getFilename(), e);
+            markError(documentId);
+        }
+    }
+
+    /**
+     * Bring the stored chunks in line with the new chunking: unchanged rows are kept (and moved
+     * if their position changed), stale rows are deleted and new chunks are inserted.
+     * The diff is recomputed inside the transaction so concurrent changes cannot be lost;
+     * a chunk that was not planned for embedding is then stored without one.
+     */
+    private void persistChunks(Long documentId, String extractedText,
+                               List<String> chunks, Map<String, float[]> embeddingsByText) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Document document = documentRepository.findById(documentId).orElse(null);
+            if (document == null) {
+                logger.warn("Document {} was deleted during processing, discarding chunks", documentId);
+                return;
+            }
+
+            ChunkDiff diff = ChunkDiff.of(documentChunkRepository.findChunkViewsByDocumentId(documentId), chunks);
+            if (!diff.staleChunkIds().isEmpty()) {
+                documentChunkRepository.deleteAllByIdInBatch(diff.staleChunkIds());
+            }
+            documentChunkRepository.updateChunkIndexes(diff.movedChunks());
+
+            List<DocumentChunkRepositoryCustom.ChunkRow> rows = new ArrayList<>(diff.addedChunks().size());
+            diff.addedChunks().forEach((chunkIndex, text) ->
+                rows.add(new DocumentChunkRepositoryCustom.ChunkRow(text, chunkIndex, embeddingsByText.get(text))));
+            documentChunkRepository.insertChunksBatch(documentId, rows, LocalDateTime.now());
+
+            document.setExtractedText(extractedText);
+            document.setTotalChunks(chunks.size());
+            document.setStatus(Document.DocumentStatus.PROCESSED);
+            documentRepository.save(document);
+
+            logger.info("Document {} chunks: {} unchanged, {} moved, {} added, {} removed", documentId,
+                diff.unchangedCount(), diff.movedChunks().size(), rows.size(), diff.staleChunkIds().size());
+        });
+    }
+
+    private void markError(Long documentId) {
+        try {
+            documentRepository.findById(documentId).ifPresent(document -> {
+                document.setStatus(Document.DocumentStatus.ERROR);
+                documentRepository.save(document);
+            });
+        } catch (Exception e) {
+            logger.error("Failed to mark document {} as ERROR", documentId, e);
+        }
+    }
+
+    /**
+     * Pipeline stage of a document that is queued or being processed.
+     */
+    public enum IngestionStage {
+        QUEUED,
+        EXTRACTING,
+        CHUNKING,
+        EMBEDDING,
+        PERSISTING
+    }
+
+    /**
+     * Mutable progress snapshot shared between the worker and status readers.
+     */
+    public static class IngestionProgress {
+        private volatile IngestionStage stage;
+        private volatile int totalChunks;
+        private final AtomicInteger processedChunks = new AtomicInteger();
+
+        public IngestionProgress(IngestionStage stage) {
+            this.stage = stage;
+        }
+
+        public IngestionStage getStage() {
+            return stage;
+        }
+
+        public void setStage(IngestionStage stage) {
+            this.stage = stage;
+        }
+
+        public int getTotalChunks() {
+            return totalChunks;
+        }
+
+        public void setTotalChunks(int totalChunks) {
+            this.totalChunks = totalChunks;
+        }
+
+        public int getProcessedChunks() {
+            return processedChunks.get();
+        }
+
+        public void addProcessedChunks(int count) {
+            processedChunks.addAndGet(count);
+        }
+    }
+}
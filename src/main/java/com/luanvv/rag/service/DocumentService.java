@@ -2,26 +2,36 @@ package com.luanvv.rag.service;
 
 import com.luanvv.rag.config.AppProperties;
 import com.luanvv.rag.entity.Document;
-import com.luanvv.rag.entity.DocumentChunk;
 import com.luanvv.rag.repository.DocumentRepository;
 import com.luanvv.rag.repository.DocumentChunkRepository;
-import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
+import com.luanvv.rag.repository.DocumentChunkView;
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Service for handling document upload, processing, and management.
@@ -34,146 +44,240 @@ public class DocumentService {
     
     private final DocumentRepository documentRepository;
     private final DocumentChunkRepository documentChunkRepository;
-    private final TextExtractionService textExtractionService;
-    private final DocumentChunkingService documentChunkingService;
-    private final EmbeddingProvider embeddingProvider;
+    private final DocumentIngestionService documentIngestionService;
+    private final SemanticAnswerCache answerCache;
+    private final TransactionTemplate transactionTemplate;
     private final AppProperties appProperties;
     private final String uploadDirectory;
     
     public DocumentService(DocumentRepository documentRepository,
                           DocumentChunkRepository documentChunkRepository,
-                          TextExtractionService textExtractionService,
-                          DocumentChunkingService documentChunkingService,
-                          EmbeddingProvider embeddingProvider,
+                          DocumentIngestionService documentIngestionService,
+                          SemanticAnswerCache answerCache,
+                          PlatformTransactionManager transactionManager,
                           AppProperties appProperties,
                           String uploadDirectory) {
         this.documentRepository = documentRepository;
         this.documentChunkRepository = documentChunkRepository;
-        this.textExtractionService = textExtractionService;
-        this.documentChunkingService = documentChunkingService;
-        this.embeddingProvider = embeddingProvider;
+        this.documentIngestionService = documentIngestionService;
+        this.answerCache = answerCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.appProperties = appProperties;
         this.uploadDirectory = uploadDirectory;
     }
     
     /**
-     * Upload and process a document.
+     * Store an uploaded document and queue it for background processing.
+     * Returns as soon as the file is on disk; progress is reported by getIngestionProgress.
+     * When identical bytes were already processed, the document is linked to their chunks and file
+     * instead, and the new copy is removed. The file is written outside any transaction so a slow upload does not hold a database connection.
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Document uploadDocument(MultipartFile file) throws IOException {
         logger.info("Starting document upload: {}", file.getOriginalFilename());
         
         validateFile(file);
         
-        // Save file to disk
-        String filename = file.getOriginalFilename();
-        String uniqueFilename = generateUniqueFilename(filename);
-        Path filePath = Paths.get(uploadDirectory, uniqueFilename);
+        // Fail fast before touching the disk when the pipeline is saturated
+        documentIngestionService.reserveSlot();
         
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+        Path filePath = null;
+        AtomicBoolean submitted = new AtomicBoolean();
+        try {
+            // Save file to disk, hashing the bytes on the way
+            StoredFile storedFile = storeFile(file);
+            filePath = storedFile.path();
+            
+            // Create document entity
+            Document document = new Document(
+                file.getOriginalFilename(),
+                filePath.toString(),
+                file.getSize(),
+                file.getContentType()
+            );
+            document.setContentHash(storedFile.contentHash());
+            
+            // Save in one short transaction; the ingestion workers start once it commits
+            Document saved = transactionTemplate.execute(status -> saveUpload(document, submitted));
+            if (saved.getSourceDocumentId() != null) {
+                FileUtils.deleteQuietly(filePath.toFile());
+            }
+            return saved;
+        } catch (IOException | RuntimeException e) {
+            if (filePath != null) {
+                FileUtils.deleteQuietly(filePath.toFile());
+            }
+            throw e;
+        } finally {
+            if (!submitted.get()) {
+                documentIngestionService.releaseSlot();
+            }
+        }
+    }
+    
+    /**
+     * Persist a stored upload and either link it to identical processed content or submit it.
+     * Once submitted, the slot is released by the ingestion service, also when the transaction rolls back.
+     */
+    private Document saveUpload(Document document, AtomicBoolean submitted) {
+        Document saved = documentRepository.save(document);
+        logger.info("Document saved with ID: {}", saved.getId());
         
-        // Create document entity
-        Document document = new Document(
-            filename,
-            filePath.toString(),
-            file.getSize(),
-            file.getContentType()
-        );
+        Optional<Document> existing = documentRepository
+            .findFirstByContentHashAndStatusOrderByIdAsc(saved.getContentHash(), Document.DocumentStatus.PROCESSED);
+        if (existing.isPresent()) {
+            return linkProcessedContent(existing.get(), saved);
+        }
         
-        document = documentRepository.save(document);
-        logger.info("Document saved with ID: {}", document.getId());
+        // Extract, chunk and embed on the ingestion workers
+        documentIngestionService.submit(saved.getId());
+        submitted.set(true);
         
-        // Process document asynchronously
-        processDocumentAsync(document);
+        return saved;
+    }
+    
+    /**
+     * Reuse the extracted text, chunks and stored file of an identical, already processed upload.
+     * The chunks are not copied: the document is linked to the one that owns them, so retrieval
+     * finds each chunk once however many times the file was uploaded.
+     */
+    private Document linkProcessedContent(Document source, Document target) {
+        target.setSourceDocumentId(source.getContentDocumentId());
+        target.setFilePath(source.getFilePath());
+        target.setExtractedText(source.getExtractedText());
+        target.setTotalChunks(source.getTotalChunks());
+        target.setStatus(Document.DocumentStatus.PROCESSED);
+        target = documentRepository.save(target);
         
-        return document;
+        logger.info("Document {} has the same content as document {}, linked to its {} chunks",
+            target.getId(), target.getSourceDocumentId(), target.getTotalChunks());
+        return target;
+    }
+    
+    /**
+     * Hand the chunks of a document over to its oldest duplicate, which becomes the owner for the
+     * other duplicates, before the document is deleted or gets new content. A duplicate is unlinked.
+     */
+    private void detachContent(Document document) {
+        if (document.getSourceDocumentId() != null) {
+            document.setSourceDocumentId(null);
+            return;
+        }
+        List<Document> duplicates = documentRepository.findBySourceDocumentIdOrderByIdAsc(document.getId());
+        if (duplicates.isEmpty()) {
+            return;
+        }
+        Document heir = duplicates.get(0);
+        int movedChunks = documentChunkRepository.moveChunks(document.getId(), heir.getId());
+        heir.setSourceDocumentId(null);
+        documentRepository.save(heir);
+        documentRepository.relinkDuplicates(document.getId(), heir.getId());
+        logger.info("Moved {} chunks of document {} to its duplicate {}", movedChunks, document.getId(), heir.getId());
     }
     
     /**
-     * Process document: extract text, chunk, and generate embeddings.
+     * Replace the file of an existing document and re-process it in the background.
+     * The document keeps its ID; only chunks whose text changed are embedded again,
+     * and the old chunks stay searchable until the new ones are committed.
      */
-    @Transactional
-    public void processDocument(Document document) {
-        logger.info("Processing document: {}", document.getFilename());
+    public Document replaceDocument(Long id, MultipartFile file) throws IOException {
+        logger.info("Replacing document {} with: {}", id, file.getOriginalFilename());
+        
+        validateFile(file);
+        Document document = getDocumentById(id);
         
+        // Throws DocumentBusyException while the document is queued or processing
+        documentIngestionService.reserveDocument(id);
+        
+        Path filePath = null;
+        boolean submitted = false;
         try {
-            document.setStatus(Document.DocumentStatus.PROCESSING);
-            documentRepository.save(document);
-
-            // Extract text
-            Path filePath = Paths.get(document.getFilePath());
-            String extractedText = textExtractionService.extractText(filePath, document.getContentType());
+            StoredFile storedFile = storeFile(file);
+            filePath = storedFile.path();
             
-            if (extractedText.isEmpty()) {
-                logger.warn("No text extracted from document: {}", document.getFilename());
-                document.setStatus(Document.DocumentStatus.ERROR);
-                documentRepository.save(document);
-                return;
+            if (storedFile.contentHash().equals(document.getContentHash())
+                    && document.getStatus() == Document.DocumentStatus.PROCESSED) {
+                logger.info("Document {} content is unchanged, nothing to re-process", id);
+                FileUtils.deleteQuietly(filePath.toFile());
+                return document;
             }
-            document.setExtractedText(extractedText);
             
-            // Chunk text
-            List<String> chunks = documentChunkingService.chunkText(extractedText);
+            Path previousFile = Paths.get(document.getFilePath());
+            detachContent(document);
+            document.setFilename(file.getOriginalFilename());
+            document.setFilePath(filePath.toString());
+            document.setFileSize(file.getSize());
+            document.setContentType(file.getContentType());
+            document.setContentHash(storedFile.contentHash());
+            document.setStatus(Document.DocumentStatus.UPLOADED);
+            document = documentRepository.save(document);
             
-            // Create and save document chunks with embeddings
-            int chunkIndex = 0;
-            for (String chunkText : chunks) {
-                if (documentChunkingService.isValidChunk(chunkText)) {
-                    // Generate embedding for the chunk
-                    try {
-                        float[] embedding = embeddingProvider.generateEmbedding(chunkText);
-                        String vectorString = convertEmbeddingToVector(embedding);
-                        
-                        // Use custom insert method to properly handle vector type
-                        documentChunkRepository.insertChunkWithVector(
-                            document.getId(),
-                            chunkText,
-                            chunkIndex,
-                            vectorString,
-                            java.time.LocalDateTime.now()
-                        );
-                        
-                        logger.debug("Generated embedding for chunk {}: {} dimensions", 
-                                   chunkIndex, embedding.length);
-                        chunkIndex++;
-                        
-                    } catch (Exception e) {
-                        logger.warn("Failed to generate embedding for chunk {}: {}", 
-                                  chunkIndex, e.getMessage());
-                        
-                        // Save chunk without embedding using regular JPA method
-                        DocumentChunk chunk = new DocumentChunk(document, chunkText, chunkIndex++);
-                        documentChunkRepository.save(chunk);
-                    }
-                }
-            }
-            
-            document.setTotalChunks(chunkIndex);
-            document.setStatus(Document.DocumentStatus.PROCESSED);
-            documentRepository.save(document);
+            documentIngestionService.submit(document.getId());
+            submitted = true;
+            deleteFileIfUnused(previousFile, id);
             
-            logger.info("Document processed successfully: {} chunks created", chunkIndex);
-            
-        } catch (Exception e) {
-            logger.error("Error processing document: {}", document.getFilename(), e);
-            document.setStatus(Document.DocumentStatus.ERROR);
-            documentRepository.save(document);
-            throw new RuntimeException("Failed to process document: " + e.getMessage(), e);
+            return document;
+        } catch (IOException | RuntimeException e) {
+            if (filePath != null) {
+                FileUtils.deleteQuietly(filePath.toFile());
+            }
+            throw e;
+        } finally {
+            if (!submitted) {
+                documentIngestionService.releaseDocument(id);
+            }
         }
     }
-
+    
+    /**
+     * Write the upload to a new file in the upload directory, hashing the bytes on the way.
+     */
+    private StoredFile storeFile(MultipartFile file) throws IOException {
+        Path filePath = Paths.get(uploadDirectory, generateUniqueFilename(file.getOriginalFilename()));
+        
+        MessageDigest digest = newSha256Digest();
+        try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+            Files.copy(inputStream, filePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return new StoredFile(filePath, HexFormat.of().formatHex(digest.digest()));
+    }
+    
     /**
-     * Process document asynchronously (placeholder for async processing).
+     * Delete a file the document no longer uses once the transaction commits, unless a duplicate
+     * (or the heir of the document's chunks) still shares it.
      */
-    private void processDocumentAsync(Document document) {
-        // In a real application, this would be handled by @Async or a message queue
-        // For now, we'll process synchronously
+    private void deleteFileIfUnused(Path path, Long documentId) {
+        if (documentRepository.existsByFilePathAndIdNot(path.toString(), documentId)) {
+            logger.info("Keeping file {}, it is shared with another document", path);
+            return;
+        }
+        deleteFileAfterCommit(path);
+    }
+    
+    private void deleteFileAfterCommit(Path path) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            FileUtils.deleteQuietly(path.toFile());
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                FileUtils.deleteQuietly(path.toFile());
+            }
+        });
+    }
+    
+    private static MessageDigest newSha256Digest() {
         try {
-            processDocument(document);
-        } catch (Exception e) {
-            logger.error("Error in async document processing", e);
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
         }
     }
     
+    private record StoredFile(Path path, String contentHash) {
+    }
+    
     /**
      * Get all documents.
      */
@@ -197,25 +301,30 @@ public class DocumentService {
         
         Document document = getDocumentById(id);
         
-        // Delete file from disk
-        try {
-            Path filePath = Paths.get(document.getFilePath());
-            Files.deleteIfExists(filePath);
-        } catch (IOException e) {
-            logger.warn("Failed to delete file: {}", document.getFilePath(), e);
-        }
-        
-        // Delete from database (chunks will be deleted by cascade)
+        // Delete from database (chunks will be deleted by cascade, unless a duplicate takes them over)
+        detachContent(document);
         documentRepository.delete(document);
+        answerCache.invalidateDocument(id);
+        
+        // Delete file from disk once nothing refers to it
+        deleteFileIfUnused(Paths.get(document.getFilePath()), id);
         
         logger.info("Document deleted successfully: {}", document.getFilename());
     }
     
     /**
-     * Get document chunks.
+     * Get in-flight ingestion progress for a document.
+     */
+    public Optional<DocumentIngestionService.IngestionProgress> getIngestionProgress(Long documentId) {
+        return documentIngestionService.getProgress(documentId);
+    }
+    
+    /**
+     * Get document chunks for display, without their embeddings.
+     * Duplicate uploads show the chunks of the document they are linked to.
      */
-    public List<DocumentChunk> getDocumentChunks(Long documentId) {
-        return documentChunkRepository.findByDocumentIdOrderByChunkIndex(documentId);
+    public List<DocumentChunkView> getDocumentChunks(Long documentId) {
+        return documentChunkRepository.findChunkViewsByDocumentId(getDocumentById(documentId).getContentDocumentId());
     }
     
     /**
@@ -266,21 +375,4 @@ public class DocumentService {
         }
         return filename.substring(lastDotIndex + 1);
     }
-    
-    /**
-     * Convert float array embedding to PostgreSQL vector format.
-     * PostgreSQL vector format is: [1.0,2.0,3.0]
-     */
-    private String convertEmbeddingToVector(float[] embedding) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for (int i = 0; i < embedding.length; i++) {
-            if (i > 0) {
-                sb.append(",");
-            }
-            sb.append(embedding[i]);
-        }
-        sb.append("]");
-        return sb.toString();
-    }
 }
@@ -16,14 +16,4 @@ public interface EmbeddingProvider {
      * Generate embeddings for multiple texts in batch.
      */
     List<float[]> generateEmbeddings(List<String> texts);
-    
-    /**
-     * Convert embedding array to PostgreSQL vector format.
-     */
-    String embeddingToVector(float[] embedding);
-    
-    /**
-     * Parse PostgreSQL vector format back to embedding array.
-     */
-    float[] vectorToEmbedding(String vectorString);
 }
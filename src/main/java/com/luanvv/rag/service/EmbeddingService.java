@@ -1,5 +1,6 @@
 package com.luanvv.rag.service;
 
+import com.luanvv.rag.service.ModelCallLimiter.ModelType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.embedding.EmbeddingModel;
@@ -18,9 +19,11 @@ public class EmbeddingService implements EmbeddingProvider {
     private static final Logger logger = LoggerFactory.getLogger(EmbeddingService.class);
     
     private final EmbeddingModel embeddingModel;
+    private final ModelCallLimiter modelCallLimiter;
     
-    public EmbeddingService(EmbeddingModel embeddingModel) {
+    public EmbeddingService(EmbeddingModel embeddingModel, ModelCallLimiter modelCallLimiter) {
         this.embeddingModel = embeddingModel;
+        this.modelCallLimiter = modelCallLimiter;
     }
     
     @Override
@@ -33,7 +36,7 @@ public class EmbeddingService implements EmbeddingProvider {
             logger.debug("Generating embedding for text: {}", text.substring(0, Math.min(50, text.length())));
             
             // Use Spring AI to generate embedding
-            EmbeddingResponse response = embeddingModel.embedForResponse(List.of(text));
+            EmbeddingResponse response = modelCallLimiter.call(ModelType.EMBEDDING, () -> embeddingModel.embedForResponse(List.of(text)));
             
             if (response.getResults().isEmpty()) {
                 throw new RuntimeException("No embedding results returned from Ollama");
@@ -45,6 +48,8 @@ public class EmbeddingService implements EmbeddingProvider {
             logger.debug("Generated embedding with {} dimensions", embedding.length);
             return embedding;
             
+        } catch (ModelBusyException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error generating embedding: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to generate embedding", e);
@@ -61,7 +66,7 @@ public class EmbeddingService implements EmbeddingProvider {
             logger.debug("Generating embeddings for {} texts", texts.size());
             
             // Use Spring AI to generate embeddings for multiple texts
-            EmbeddingResponse response = embeddingModel.embedForResponse(texts);
+            EmbeddingResponse response = modelCallLimiter.call(ModelType.EMBEDDING, () -> embeddingModel.embedForResponse(texts));
             
             if (response.getResults().size() != texts.size()) {
                 throw new RuntimeException("Mismatch between input texts and embedding results");
@@ -76,49 +81,11 @@ public class EmbeddingService implements EmbeddingProvider {
             logger.debug("Generated {} embeddings", embeddings.size());
             return embeddings;
             
+        } catch (ModelBusyException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error generating embeddings: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to generate embeddings", e);
         }
     }
-    
-    @Override
-    public String embeddingToVector(float[] embedding) {
-        if (embedding == null || embedding.length == 0) {
-            throw new IllegalArgumentException("Embedding cannot be null or empty");
-        }
-        
-        // Convert to PostgreSQL vector format: [1.0,2.0,3.0]
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < embedding.length; i++) {
-            if (i > 0) {
-                sb.append(",");
-            }
-            sb.append(embedding[i]);
-        }
-        sb.append("]");
-        return sb.toString();
-    }
-    
-    @Override
-    public float[] vectorToEmbedding(String vectorString) {
-        if (vectorString == null || vectorString.isEmpty()) {
-            throw new IllegalArgumentException("Vector string cannot be null or empty");
-        }
-        
-        try {
-            // Remove brackets and split by comma
-            String cleanVector = vectorString.substring(1, vectorString.length() - 1);
-            String[] parts = cleanVector.split(",");
-            
-            float[] embedding = new float[parts.length];
-            for (int i = 0; i < parts.length; i++) {
-                embedding[i] = Float.parseFloat(parts[i].trim());
-            }
-            
-            return embedding;
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse vector string: " + e.getMessage(), e);
-        }
-    }
 }
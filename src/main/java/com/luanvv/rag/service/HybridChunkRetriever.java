@@ -0,0 +1,111 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Hybrid retrieval: runs the vector and full-text searches in parallel and merges
+ * their rankings with reciprocal-rank fusion (RRF).
+ * A leg that fails contributes no candidates, so the other leg still answers.
+ */
+@Service
+public class HybridChunkRetriever implements ChunkRetriever {
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridChunkRetriever.class);
+
+    private final VectorChunkRetriever vectorChunkRetriever;
+    private final LexicalChunkRetriever lexicalChunkRetriever;
+    private final ThreadPoolTaskExecutor retrievalExecutor;
+    private final AppProperties appProperties;
+
+    public HybridChunkRetriever(VectorChunkRetriever vectorChunkRetriever,
+                                LexicalChunkRetriever lexicalChunkRetriever,
+                                @Qualifier("retrievalExecutor") ThreadPoolTaskExecutor retrievalExecutor,
+                                AppProperties appProperties) {
+        this.vectorChunkRetriever = vectorChunkRetriever;
+        this.lexicalChunkRetriever = lexicalChunkRetriever;
+        this.retrievalExecutor = retrievalExecutor;
+        this.appProperties = appProperties;
+    }
+
+    @Override
+    public List<RetrievedChunk> retrieve(String searchQuery, int limit) {
+        return retrieveAsync(searchQuery, limit).join();
+    }
+
+    /**
+     * Start both legs and return a future of the fused ranking.
+     * No pool thread blocks waiting for the legs, so callers may start this from the retrieval pool.
+     * Cancelling the returned future skips the legs that have not started their search yet.
+     */
+    public CompletableFuture<List<RetrievedChunk>> retrieveAsync(String searchQuery, int limit) {
+        AppProperties.Vector vector = appProperties.getVector();
+        CompletableFuture<List<RetrievedChunk>> result = new CompletableFuture<>();
+
+        CompletableFuture<List<RetrievedChunk>> vectorLeg = runLeg("vector", result,
+            () -> vectorChunkRetriever.retrieve(searchQuery, vector.getVectorCandidates()));
+        CompletableFuture<List<RetrievedChunk>> lexicalLeg = runLeg("full-text", result,
+            () -> lexicalChunkRetriever.retrieve(searchQuery, vector.getLexicalCandidates()));
+
+        vectorLeg.thenCombine(lexicalLeg, (vectorChunks, lexicalChunks) -> {
+            List<RetrievedChunk> fused = fuse(List.of(vectorChunks, lexicalChunks), vector.getRrfK(), limit);
+            logger.info("Hybrid retrieval fused {} vector and {} full-text candidates into {} chunks",
+                vectorChunks.size(), lexicalChunks.size(), fused.size());
+            return fused;
+        }).whenComplete((fused, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(fused);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<List<RetrievedChunk>> runLeg(String name, CompletableFuture<?> result,
+                                                           Supplier<List<RetrievedChunk>> leg) {
+        return CompletableFuture.supplyAsync(() -> result.isCancelled() ? List.<RetrievedChunk>of() : leg.get(),
+                retrievalExecutor)
+            .exceptionally(e -> {
+                logger.warn("Hybrid retrieval {} search failed, continuing without it: {}", name, e.getMessage());
+                return List.of();
+            });
+    }
+
+    /**
+     * Merge rankings with reciprocal-rank fusion: each chunk scores the sum of 1 / (k + rank)
+     * over the rankings it appears in. Scores are normalized so a chunk ranked first
+     * everywhere scores 1.0. Ties keep the order of the first ranking.
+     */
+    static List<RetrievedChunk> fuse(List<List<RetrievedChunk>> rankings, int rrfK, int limit) {
+        Map<Long, RetrievedChunk> chunksById = new LinkedHashMap<>();
+        Map<Long, Double> fusedScores = new HashMap<>();
+
+        for (List<RetrievedChunk> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                RetrievedChunk chunk = ranking.get(rank);
+                chunksById.putIfAbsent(chunk.id(), chunk);
+                fusedScores.merge(chunk.id(), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+
+        double maxScore = rankings.size() / (double) (rrfK + 1);
+        return chunksById.values().stream()
+            .sorted(Comparator.comparingDouble((RetrievedChunk chunk) -> fusedScores.get(chunk.id())).reversed())
+            .limit(limit)
+            .map(chunk -> chunk.withScore(fusedScores.get(chunk.id()) / maxScore))
+            .toList();
+    }
+}
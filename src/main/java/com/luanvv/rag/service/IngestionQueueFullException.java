@@ -0,0 +1,11 @@
+package com.luanvv.rag.service;
+
+/**
+ * Thrown when the ingestion pipeline has no free slot for a new document.
+ */
+public class IngestionQueueFullException extends RuntimeException {
+
+    public IngestionQueueFullException(String message) {
+        super(message);
+    }
+}
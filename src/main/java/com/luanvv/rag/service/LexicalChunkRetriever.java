@@ -0,0 +1,89 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Lexical retrieval over the chunk full-text index, ranked with ts_rank_cd.
+ * Needs no embedding model, so it keeps working when Ollama is unavailable
+ * and also covers chunks that were stored without an embedding.
+ */
+@Service
+public class LexicalChunkRetriever implements ChunkRetriever {
+    
+    private static final Logger logger = LoggerFactory.getLogger(LexicalChunkRetriever.class);
+    
+    private static final Pattern TERM_PATTERN = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final int MAX_TERMS = 16;
+    
+    private final DocumentChunkRepository documentChunkRepository;
+    
+    public LexicalChunkRetriever(DocumentChunkRepository documentChunkRepository) {
+        this.documentChunkRepository = documentChunkRepository;
+    }
+    
+    @Override
+    public List<RetrievedChunk> retrieve(String searchQuery, int limit) {
+        String tsQuery = toOrQuery(searchQuery);
+        if (tsQuery.isEmpty()) {
+            return List.of();
+        }
+        
+        List<RetrievedChunk> chunks = documentChunkRepository.findChunksByTextSearch(tsQuery, limit)
+            .stream()
+            .map(RetrievedChunk::from)
+            .toList();
+        logger.info("Found {} chunks for text search: {}", chunks.size(), tsQuery);
+        return chunks;
+    }
+    
+    /**
+     * Full-text search over the chunks of the given documents only.
+     */
+    public List<RetrievedChunk> retrieveFromDocuments(String searchQuery, Collection<Long> documentIds, int limit) {
+        String tsQuery = toOrQuery(searchQuery);
+        if (tsQuery.isEmpty() || documentIds.isEmpty()) {
+            return List.of();
+        }
+        
+        List<RetrievedChunk> chunks = documentChunkRepository.findChunksByTextSearchInDocuments(tsQuery, documentIds, limit)
+            .stream()
+            .map(RetrievedChunk::from)
+            .toList();
+        logger.info("Found {} chunks in documents {} for text search: {}", chunks.size(), documentIds, tsQuery);
+        return chunks;
+    }
+    
+    /**
+     * Build a to_tsquery expression matching any of the query terms.
+     * Only letter/digit runs are kept, so the result never contains tsquery operators.
+     */
+    static String toOrQuery(String searchQuery) {
+        return terms(searchQuery).stream()
+            .limit(MAX_TERMS)
+            .collect(Collectors.joining(" | "));
+    }
+    
+    /**
+     * Distinct lower-cased letter/digit terms of the text, in order of appearance.
+     */
+    static Set<String> terms(String text) {
+        if (text == null) {
+            return Set.of();
+        }
+        return TERM_PATTERN.matcher(text.toLowerCase(Locale.ROOT)).results()
+            .map(MatchResult::group)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+}
@@ -0,0 +1,223 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.repository.DocumentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Deterministic first-stage intent analysis using regex and lexicon rules.
+ * Recognizes explicit document IDs ("doc #12", "document id 5", "summarize doc 3"), filenames
+ * ("report.pdf") and words taken from the filenames of uploaded documents.
+ * Returns empty when none of these apply, so the LLM analysis decides instead. Bare cue words
+ * such as "files" or "pdf" are not enough to classify a question.
+ */
+@Service
+public class LocalIntentClassifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalIntentClassifier.class);
+
+    private static final Pattern DOCUMENT_ID_PATTERN = Pattern.compile(
+        "\\b(?:documents?|docs?|files?)\\s*(id\\s*#?|no\\.?\\s*#?|number\\s*#?|#)?\\s*(\\d+(?:\\s*(?:,|and|&|or)\\s*#?\\d+)*)\\b",
+        Pattern.CASE_INSENSITIVE);
+    // Without an ID marker the number must end the reference: "doc 12?" or "doc 12 and 3", not "file 2024 budget"
+    private static final Pattern END_OF_REFERENCE_PATTERN = Pattern.compile(
+        "\\s*(?:$|[?!,;:)]|\\.(?!\\w)|&|(?:and|or|versus|vs)\\b)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+");
+    // Only explicit whole-document intents: words like "review" or "compare" are common topics too
+    private static final Pattern WHOLE_DOCUMENT_PATTERN = Pattern.compile(
+        "\\b(?:summar(?:y|ies|i[sz]e)|overview|tl;?dr|(?:key|main) (?:points|takeaways) (?:of|from|in))\\b",
+        Pattern.CASE_INSENSITIVE);
+    private static final Set<String> GENERIC_FILENAME_TERMS = Set.of(
+        "document", "file", "final", "copy", "draft", "version", "scan", "untitled", "new");
+    private static final int MIN_VOCABULARY_TERM_LENGTH = 4;
+    private static final Duration VOCABULARY_TTL = Duration.ofSeconds(30);
+
+    private final DocumentRepository documentRepository;
+    private final AppProperties appProperties;
+    private final Pattern filenamePattern;
+    private volatile Vocabulary vocabulary;
+
+    public LocalIntentClassifier(DocumentRepository documentRepository, AppProperties appProperties) {
+        this.documentRepository = documentRepository;
+        this.appProperties = appProperties;
+        String extensions = Arrays.stream(appProperties.getFile().getAllowedExtensions())
+            .map(Pattern::quote)
+            .collect(Collectors.joining("|"));
+        this.filenamePattern = Pattern.compile(
+            "(?<![\\w.-])(\\w[\\w.-]*\\.(?:" + extensions + "))(?!\\w)", Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * Classify the question, or return empty when the rules are not confident.
+     */
+    public Optional<SearchAnalysis> classify(String question) {
+        if (!appProperties.getQuery().isLocalIntentEnabled() || question == null || question.isBlank()) {
+            return Optional.empty();
+        }
+
+        Vocabulary currentVocabulary = getVocabulary();
+        List<Integer> documentIds = extractDocumentIds(question);
+        List<String> documentNames = extractDocumentNames(question, currentVocabulary);
+
+        String reasoning;
+        if (!documentIds.isEmpty() || !documentNames.isEmpty()) {
+            reasoning = "Local classifier: explicit document reference";
+        } else if (mentionsVocabularyTerm(question, currentVocabulary)) {
+            reasoning = "Local classifier: question mentions an uploaded document";
+        } else {
+            return Optional.empty();
+        }
+
+        SearchAnalysis analysis = new SearchAnalysis();
+        analysis.setNeedsDocumentSearch(true);
+        analysis.setDocumentIds(documentIds);
+        analysis.setDocumentNames(documentNames);
+        analysis.setSearchQuery(extractSimpleKeywords(question));
+        analysis.setQuestionType("document-specific");
+        analysis.setReasoning(reasoning);
+        logger.info("{} (ids: {}, names: {})", reasoning, documentIds, documentNames);
+        return Optional.of(analysis);
+    }
+
+    /**
+     * Key of the documents the question explicitly references by ID or filename, empty when it
+     * references none. Questions with different keys are about different documents.
+     */
+    public String documentScope(String question) {
+        if (question == null || question.isBlank()) {
+            return "";
+        }
+        List<Integer> documentIds = extractDocumentIds(question).stream().sorted().toList();
+        List<String> documentNames = extractDocumentNames(question, getVocabulary()).stream()
+            .map(name -> name.toLowerCase(Locale.ROOT))
+            .distinct()
+            .sorted()
+            .toList();
+        if (documentIds.isEmpty() && documentNames.isEmpty()) {
+            return "";
+        }
+        return "ids=" + documentIds + ";names=" + documentNames;
+    }
+
+    /**
+     * Whether the question explicitly asks about the documents as a whole (summaries, overviews,
+     * key points) rather than about a specific topic in them.
+     */
+    static boolean asksAboutWholeDocument(String question) {
+        return question != null && WHOLE_DOCUMENT_PATTERN.matcher(question).find();
+    }
+
+    /**
+     * Simple keyword extraction used as the search query when no LLM analysis is available.
+     */
+    static String extractSimpleKeywords(String question) {
+        return question.toLowerCase()
+            .replaceAll("\\b(what|how|when|where|why|who|can|could|would|should|please|tell|show|explain|describe|based on|from the|in the|documents?|files?)\\b", "")
+            .replaceAll("\\b(the|a|and|or|but|in|on|at|to|for|of|with|by|is|are|was|were)\\b", "")
+            .replaceAll("[^a-zA-Z0-9\\s-]", " ")
+            .replaceAll("\\s+", " ")
+            .trim();
+    }
+
+    static List<Integer> extractDocumentIds(String question) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        Matcher matcher = DOCUMENT_ID_PATTERN.matcher(question);
+        while (matcher.find()) {
+            boolean marked = matcher.group(1) != null;
+            if (!marked && !END_OF_REFERENCE_PATTERN.matcher(question).region(matcher.end(), question.length()).lookingAt()) {
+                continue;
+            }
+            Matcher numbers = NUMBER_PATTERN.matcher(matcher.group(2));
+            while (numbers.find()) {
+                try {
+                    ids.add(Integer.parseInt(numbers.group()));
+                } catch (NumberFormatException e) {
+                    // Too large to be a document ID
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private List<String> extractDocumentNames(String question, Vocabulary currentVocabulary) {
+        Set<String> names = new LinkedHashSet<>();
+        Matcher matcher = filenamePattern.matcher(question);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            // Match stored filenames case-insensitively; the lookup by name is exact
+            names.add(currentVocabulary.filenamesByLowerCase().getOrDefault(name.toLowerCase(Locale.ROOT), name));
+        }
+
+        // Filenames with spaces are not caught by the pattern, look them up directly
+        String lowerQuestion = question.toLowerCase(Locale.ROOT);
+        currentVocabulary.filenamesByLowerCase().forEach((lowerName, filename) -> {
+            if (lowerQuestion.contains(lowerName)) {
+                names.add(filename);
+            }
+        });
+        return new ArrayList<>(names);
+    }
+
+    private boolean mentionsVocabularyTerm(String question, Vocabulary currentVocabulary) {
+        return LexicalChunkRetriever.terms(question).stream()
+            .anyMatch(currentVocabulary.terms()::contains);
+    }
+
+    private Vocabulary getVocabulary() {
+        Vocabulary current = vocabulary;
+        if (current != null && current.builtAt().plus(VOCABULARY_TTL).isAfter(Instant.now())) {
+            return current;
+        }
+        synchronized (this) {
+            if (vocabulary == current) {
+                vocabulary = buildVocabulary();
+            }
+            return vocabulary;
+        }
+    }
+
+    private Vocabulary buildVocabulary() {
+        try {
+            Set<String> extensions = new HashSet<>(Arrays.asList(appProperties.getFile().getAllowedExtensions()));
+            Set<String> terms = new HashSet<>();
+            Map<String, String> filenamesByLowerCase = new HashMap<>();
+            for (String filename : documentRepository.findAllFilenames()) {
+                filenamesByLowerCase.put(filename.toLowerCase(Locale.ROOT), filename);
+                terms.addAll(LexicalChunkRetriever.terms(filename).stream()
+                    .filter(term -> term.length() >= MIN_VOCABULARY_TERM_LENGTH)
+                    .filter(term -> !term.chars().allMatch(Character::isDigit))
+                    .filter(term -> !extensions.contains(term) && !GENERIC_FILENAME_TERMS.contains(term))
+                    .collect(Collectors.toSet()));
+            }
+            logger.debug("Built intent vocabulary with {} terms from {} filenames", terms.size(), filenamesByLowerCase.size());
+            return new Vocabulary(terms, filenamesByLowerCase, Instant.now());
+        } catch (Exception e) {
+            logger.warn("Failed to build intent vocabulary from filenames: {}", e.getMessage());
+            return new Vocabulary(Set.of(), Map.of(), Instant.now());
+        }
+    }
+
+    /**
+     * Snapshot of terms and filenames of the uploaded documents.
+     */
+    private record Vocabulary(Set<String> terms, Map<String, String> filenamesByLowerCase, Instant builtAt) {
+    }
+}
@@ -0,0 +1,357 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import com.luanvv.rag.repository.DocumentReferenceView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Map-reduce answering for questions about whole documents.
+ * The chunks of each document are grouped into sections from their lengths; a bounded number of
+ * sections, spread over the documents, is read and answered on its own (map), with a bounded number
+ * in flight, so memory, prompt size and latency do not grow with the document. Partial answers are
+ * then combined in rounds until they fit a single reduce prompt.
+ */
+@Service
+public class MapReduceAnswerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MapReduceAnswerService.class);
+
+    static final String NO_RELEVANT_INFORMATION = "NO_RELEVANT_INFORMATION";
+    private static final int SECTION_SEPARATOR_LENGTH = 2;
+
+    private final DocumentChunkRepository documentChunkRepository;
+    private final ChatService chatService;
+    private final ThreadPoolTaskExecutor mapReduceExecutor;
+    private final ModelCallLimiter modelCallLimiter;
+    private final AppProperties appProperties;
+
+    public MapReduceAnswerService(DocumentChunkRepository documentChunkRepository,
+                                  ChatService chatService,
+                                  @Qualifier("mapReduceExecutor") ThreadPoolTaskExecutor mapReduceExecutor,
+                                  ModelCallLimiter modelCallLimiter,
+                                  AppProperties appProperties) {
+        this.documentChunkRepository = documentChunkRepository;
+        this.chatService = chatService;
+        this.mapReduceExecutor = mapReduceExecutor;
+        this.modelCallLimiter = modelCallLimiter;
+        this.appProperties = appProperties;
+    }
+
+    /**
+     * Answer the question for the sections of the documents and combine the partial answers
+     * until they fit the reduce budget. At most map-max-sections sections are answered, spread
+     * evenly over the documents. Sections without relevant information are dropped, so the
+     * partial answers are empty when no section could answer.
+     */
+    public MapResult collectPartialAnswers(String question, List<DocumentReferenceView> documents) {
+        AppProperties.Query config = appProperties.getQuery();
+        List<DocumentSections> plannedDocuments = planSections(documents, config.getMapSectionChars());
+        int totalSections = plannedDocuments.stream().mapToInt(document -> document.sections().size()).sum();
+        int[] allocation = allocate(plannedDocuments, Math.max(1, config.getMapMaxSections()));
+
+        CallBatch mapped = new CallBatch();
+        for (int i = 0; i < plannedDocuments.size(); i++) {
+            DocumentSections document = plannedDocuments.get(i);
+            for (int sectionIndex : spread(document.sections().size(), allocation[i])) {
+                Section section = document.sections().get(sectionIndex);
+                String sectionText = String.join("\n\n", documentChunkRepository.findChunkTexts(
+                    document.contentDocumentId(), section.firstChunk(), section.chunkCount()));
+                mapped.submit(mapSection(question, document.filename(), sectionIndex + 1, sectionText));
+            }
+            logger.info("Mapping {} of {} sections of document {}", allocation[i], document.sections().size(), document.filename());
+        }
+
+        List<String> partialAnswers = mapped.join();
+        logger.info("Map step kept {} of {} partial answers", partialAnswers.size(), mapped.size());
+        return new MapResult(reduceToBudget(question, partialAnswers), mapped.size(), totalSections);
+    }
+
+    /**
+     * Prompt that combines partial answers into the final answer.
+     */
+    public String buildReducePrompt(String question, List<String> partialAnswers) {
+        StringBuilder notes = new StringBuilder();
+        for (int i = 0; i < partialAnswers.size(); i++) {
+            notes.append("Partial answer ").append(i + 1).append(":\n").append(partialAnswers.get(i)).append("\n\n");
+        }
+        return String.format("""
+            The following partial answers were produced from different sections of the referenced documents.
+            Combine them into one answer to the question.
+
+            QUESTION: %s
+
+            %s
+            INSTRUCTIONS:
+            - Merge the partial answers into a single comprehensive, non-repetitive answer
+            - Keep references to specific documents or sections when they are given
+            - If the partial answers disagree, say so
+            - Do not add information that is not in the partial answers
+            """, question, notes.toString().trim());
+    }
+
+    /**
+     * Combine groups of partial answers until all of them fit in one reduce prompt.
+     */
+    private List<String> reduceToBudget(String question, List<String> partialAnswers) {
+        int budget = appProperties.getQuery().getReduceInputChars();
+        List<String> current = partialAnswers;
+        while (current.size() > 1 && totalLength(current) > budget) {
+            List<List<String>> groups = groupByBudget(current, budget);
+            if (groups.size() == current.size()) {
+                // Every partial answer alone exceeds the budget; combining cannot make progress
+                break;
+            }
+            CallBatch reduced = new CallBatch();
+            for (List<String> group : groups) {
+                reduced.submit(group.size() == 1 ? () -> group.get(0)
+                    : () -> chatService.generateResponse(buildReducePrompt(question, group)));
+            }
+            logger.info("Reducing {} partial answers in {} groups", current.size(), groups.size());
+            current = reduced.join();
+        }
+        return current;
+    }
+
+    /**
+     * Split each document into sections of up to maxChars from the chunk lengths alone.
+     * A document and its duplicate uploads share their chunks and are planned once.
+     */
+    private List<DocumentSections> planSections(List<DocumentReferenceView> documents, int maxChars) {
+        Set<Long> plannedContent = new HashSet<>();
+        List<DocumentSections> plannedDocuments = new ArrayList<>();
+        for (DocumentReferenceView document : documents) {
+            if (!plannedContent.add(document.getContentDocumentId())) {
+                continue;
+            }
+            List<Section> sections = new ArrayList<>();
+            int firstChunk = 0;
+            int sectionLength = 0;
+            List<Integer> chunkLengths = documentChunkRepository.findChunkLengthsByDocumentId(document.getContentDocumentId());
+            for (int i = 0; i < chunkLengths.size(); i++) {
+                int chunkLength = chunkLengths.get(i);
+                if (sectionLength > 0 && sectionLength + chunkLength > maxChars) {
+                    sections.add(new Section(firstChunk, i - firstChunk));
+                    firstChunk = i;
+                    sectionLength = 0;
+                }
+                sectionLength += chunkLength + SECTION_SEPARATOR_LENGTH;
+            }
+            if (firstChunk < chunkLengths.size()) {
+                sections.add(new Section(firstChunk, chunkLengths.size() - firstChunk));
+            }
+            plannedDocuments.add(new DocumentSections(document.getContentDocumentId(), document.getFilename(), sections));
+        }
+        return plannedDocuments;
+    }
+
+    /**
+     * Share the section budget between the documents, one section at a time, so short documents
+     * are covered fully and the rest of the budget goes to the longer ones.
+     */
+    private static int[] allocate(List<DocumentSections> documents, int maxSections) {
+        int[] allocation = new int[documents.size()];
+        int remaining = maxSections;
+        boolean allocated = true;
+        while (remaining > 0 && allocated) {
+            allocated = false;
+            for (int i = 0; i < documents.size() && remaining > 0; i++) {
+                if (allocation[i] < documents.get(i).sections().size()) {
+                    allocation[i]++;
+                    remaining--;
+                    allocated = true;
+                }
+            }
+        }
+        return allocation;
+    }
+
+    /**
+     * Indexes of count sections spread evenly over sectionCount sections, in document order.
+     */
+    static List<Integer> spread(int sectionCount, int count) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, sectionCount); i++) {
+            indexes.add(count >= sectionCount ? i : (int) ((long) i * sectionCount / count));
+        }
+        return indexes;
+    }
+
+    private Supplier<String> mapSection(String question, String filename, int sectionNumber, String sectionText) {
+        return () -> {
+            String prompt = String.format("""
+                Below is section %d of the document "%s".
+
+                SECTION CONTENT:
+                %s
+
+                QUESTION: %s
+
+                INSTRUCTIONS:
+                - Answer the question using only this section
+                - Reference the relevant parts of the section
+                - If this section contains nothing relevant to the question, reply exactly: %s
+                """, sectionNumber, filename, sectionText, question, NO_RELEVANT_INFORMATION);
+            try {
+                String answer = chatService.generateResponse(prompt);
+                if (answer == null || answer.isBlank() || answer.contains(NO_RELEVANT_INFORMATION)) {
+                    return null;
+                }
+                return "[" + filename + ", section " + sectionNumber + "] " + answer.trim();
+            } catch (ModelBusyException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.warn("Failed to answer section {} of {}, skipping it: {}", sectionNumber, filename, e.getMessage());
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Model calls of one query on the map-reduce pool. No more calls are in flight than the
+     * configured map concurrency or the chat model's limit, whichever is lower, so a query does not
+     * queue calls it cannot run. Calls run at background priority: they yield to interactive calls
+     * but are never rejected for waiting, so a long query is not failed after most of its work.
+     * The first failure stops new submissions and cancels the calls that have not started.
+     */
+    private final class CallBatch {
+
+        private final Semaphore inFlight = new Semaphore(Math.max(1, Math.min(
+            appProperties.getQuery().getMapConcurrency(), appProperties.getModel().getChat().getMaxConcurrentCalls())));
+        private final List<CompletableFuture<String>> calls = new ArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        /**
+         * Run the call once one of the batch's in-flight slots is free.
+         * Throws the first failure of an earlier call instead of submitting more work.
+         */
+        void submit(Supplier<String> modelCall) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelAll();
+                throw new RuntimeException("Interrupted while waiting to map a document section", e);
+            }
+            if (failure.get() != null) {
+                inFlight.release();
+                throw rethrowFailure(null);
+            }
+            CompletableFuture<String> call;
+            try {
+                call = CompletableFuture.supplyAsync(() -> modelCallLimiter.inBackground(modelCall), mapReduceExecutor);
+            } catch (RuntimeException e) {
+                inFlight.release();
+                cancelAll();
+                throw e;
+            }
+            call.whenComplete((answer, error) -> {
+                if (error != null) {
+                    failure.compareAndSet(null, unwrap(error));
+                }
+                inFlight.release();
+            });
+            calls.add(call);
+        }
+
+        /**
+         * Wait for all calls and return their non-null results in submission order.
+         */
+        List<String> join() {
+            List<String> results = new ArrayList<>();
+            for (CompletableFuture<String> call : calls) {
+                try {
+                    String result = call.join();
+                    if (result != null) {
+                        results.add(result);
+                    }
+                } catch (CompletionException | CancellationException e) {
+                    throw rethrowFailure(e);
+                }
+            }
+            return results;
+        }
+
+        int size() {
+            return calls.size();
+        }
+
+        /**
+         * Cancel the outstanding calls and return the first failure, or the observed one when the
+         * failing call's completion handler has not run yet.
+         */
+        private RuntimeException rethrowFailure(Throwable observed) {
+            if (observed != null) {
+                failure.compareAndSet(null, unwrap(observed));
+            }
+            cancelAll();
+            Throwable cause = failure.get();
+            if (cause instanceof RuntimeException runtimeException) {
+                return runtimeException;
+            }
+            return new CompletionException(cause);
+        }
+
+        private void cancelAll() {
+            calls.forEach(call -> call.cancel(false));
+        }
+
+        private static Throwable unwrap(Throwable error) {
+            return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        }
+    }
+
+    private static List<List<String>> groupByBudget(List<String> partialAnswers, int budget) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        int groupLength = 0;
+        for (String partialAnswer : partialAnswers) {
+            if (!group.isEmpty() && groupLength + partialAnswer.length() > budget) {
+                groups.add(group);
+                group = new ArrayList<>();
+                groupLength = 0;
+            }
+            group.add(partialAnswer);
+            groupLength += partialAnswer.length();
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    private static int totalLength(List<String> texts) {
+        return texts.stream().mapToInt(String::length).sum();
+    }
+
+    /**
+     * Partial answers of the map step, with how many of the documents' sections were mapped.
+     */
+    public record MapResult(List<String> partialAnswers, int mappedSections, int totalSections) {
+
+        public boolean isPartial() {
+            return mappedSections < totalSections;
+        }
+    }
+
+    private record Section(int firstChunk, int chunkCount) {
+    }
+
+    private record DocumentSections(Long contentDocumentId, String filename, List<Section> sections) {
+    }
+}
@@ -0,0 +1,135 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Second retrieval stage that picks a diverse subset of the candidates with maximal marginal
+ * relevance (MMR): each pick maximizes {@code lambda * relevance - (1 - lambda) * similarity}
+ * to the chunks already picked. Overlapping chunks of one section are near-duplicates, so after
+ * the best of them is picked the others give way to chunks that add new content.
+ */
+@Service
+public class MmrChunkReranker {
+
+    private static final Logger logger = LoggerFactory.getLogger(MmrChunkReranker.class);
+
+    private final DocumentChunkRepository documentChunkRepository;
+    private final AppProperties appProperties;
+
+    public MmrChunkReranker(DocumentChunkRepository documentChunkRepository, AppProperties appProperties) {
+        this.documentChunkRepository = documentChunkRepository;
+        this.appProperties = appProperties;
+    }
+
+    /**
+     * Number of candidates to retrieve for a final result of the given size.
+     */
+    public int candidateCount(int limit) {
+        AppProperties.Vector vector = appProperties.getVector();
+        return vector.isMmrEnabled() ? Math.max(limit, vector.getMmrCandidates()) : limit;
+    }
+
+    /**
+     * Pick up to limit chunks from the candidates, which must be ordered by relevance.
+     * Falls back to the first candidates when the embeddings cannot be loaded.
+     */
+    public List<RetrievedChunk> rerank(List<RetrievedChunk> candidates, int limit) {
+        AppProperties.Vector vector = appProperties.getVector();
+        if (candidates.size() <= limit) {
+            return candidates;
+        }
+        if (!vector.isMmrEnabled()) {
+            return candidates.subList(0, limit);
+        }
+
+        Map<Long, float[]> embeddings;
+        try {
+            embeddings = documentChunkRepository.findEmbeddingsByIds(
+                candidates.stream().map(RetrievedChunk::id).toList());
+        } catch (Exception e) {
+            logger.warn("Failed to load candidate embeddings, skipping diversity reranking: {}", e.getMessage());
+            return candidates.subList(0, limit);
+        }
+
+        List<RetrievedChunk> selected = select(candidates, embeddings, limit, vector.getMmrLambda());
+        logger.info("Selected {} of {} candidates by maximal marginal relevance (lambda {})",
+            selected.size(), candidates.size(), vector.getMmrLambda());
+        return selected;
+    }
+
+    /**
+     * Greedy MMR selection. The chunk score is the relevance and the cosine similarity of the
+     * embeddings the redundancy; a chunk without an embedding counts as not redundant.
+     */
+    static List<RetrievedChunk> select(List<RetrievedChunk> candidates, Map<Long, float[]> embeddings,
+                                       int limit, double lambda) {
+        int count = candidates.size();
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = normalize(embeddings.get(candidates.get(i).id()));
+        }
+
+        // Highest similarity of each candidate to any picked chunk, updated after every pick
+        double[] maxSimilarity = new double[count];
+        boolean[] picked = new boolean[count];
+        List<RetrievedChunk> selected = new ArrayList<>(Math.min(limit, count));
+        while (selected.size() < limit && selected.size() < count) {
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                if (picked[i]) {
+                    continue;
+                }
+                double value = lambda * candidates.get(i).score() - (1 - lambda) * maxSimilarity[i];
+                if (value > bestValue) {
+                    best = i;
+                    bestValue = value;
+                }
+            }
+
+            picked[best] = true;
+            selected.add(candidates.get(best));
+            if (vectors[best] != null) {
+                for (int i = 0; i < count; i++) {
+                    if (!picked[i] && vectors[i] != null) {
+                        maxSimilarity[i] = Math.max(maxSimilarity[i], dot(vectors[i], vectors[best]));
+                    }
+                }
+            }
+        }
+        return selected;
+    }
+
+    private static float[] normalize(float[] vector) {
+        if (vector == null) {
+            return null;
+        }
+        double norm = Math.sqrt(dot(vector, vector));
+        if (norm == 0) {
+            return null;
+        }
+        float[] unit = Arrays.copyOf(vector, vector.length);
+        for (int i = 0; i < unit.length; i++) {
+            unit[i] /= (float) norm;
+        }
+        return unit;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        int length = Math.min(a.length, b.length);
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,11 @@
+package com.luanvv.rag.service;
+
+/**
+ * Thrown when a model call is not admitted because too many calls are already waiting.
+ */
+public class ModelBusyException extends RuntimeException {
+
+    public ModelBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,181 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Admission control in front of the model server, with separate limits for chat and embedding calls.
+ * Callers beyond a model's concurrency limit wait in a queue where interactive calls are served
+ * before background ones. Interactive callers are rejected with {@link ModelBusyException} when the
+ * queue is full or their wait exceeds the configured maximum, so latency stays bounded under bursts.
+ * Background calls (document ingestion) are already bounded by their worker pool and wait without limit.
+ */
+@Component
+public class ModelCallLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelCallLimiter.class);
+
+    private static final ThreadLocal<Boolean> BACKGROUND = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Model kinds with their own concurrency limit.
+     */
+    public enum ModelType {
+        CHAT, EMBEDDING
+    }
+
+    private final Map<ModelType, Lane> lanes = new EnumMap<>(ModelType.class);
+    private final Duration maxQueueWait;
+
+    public ModelCallLimiter(AppProperties appProperties, MeterRegistry meterRegistry) {
+        AppProperties.Model model = appProperties.getModel();
+        this.maxQueueWait = model.getMaxQueueWait();
+        lanes.put(ModelType.CHAT, new Lane(ModelType.CHAT, model.getChat(), meterRegistry));
+        lanes.put(ModelType.EMBEDDING, new Lane(ModelType.EMBEDDING, model.getEmbedding(), meterRegistry));
+    }
+
+    /**
+     * Run a blocking model call once a slot is free.
+     */
+    public <T> T call(ModelType type, Supplier<T> modelCall) {
+        Lane lane = lanes.get(type);
+        lane.acquire(BACKGROUND.get());
+        try {
+            return modelCall.get();
+        } finally {
+            lane.release();
+        }
+    }
+
+    /**
+     * Subscribe to a streamed model call once a slot is free; the slot is held until the stream ends.
+     */
+    public <T> Flux<T> stream(ModelType type, Supplier<Flux<T>> modelStream) {
+        Lane lane = lanes.get(type);
+        return Flux.using(() -> {
+            lane.acquire(BACKGROUND.get());
+            return lane;
+        }, slot -> modelStream.get(), Lane::release);
+    }
+
+    /**
+     * Run work whose model calls yield to interactive calls, such as embedding uploaded documents.
+     */
+    public <T> T inBackground(Supplier<T> work) {
+        boolean previous = BACKGROUND.get();
+        BACKGROUND.set(true);
+        try {
+            return work.get();
+        } finally {
+            BACKGROUND.set(previous);
+        }
+    }
+
+    /**
+     * Concurrency slots of one model. Waiters are granted a slot directly on release,
+     * so a newly arriving caller cannot overtake the queue.
+     */
+    private final class Lane {
+
+        private final ModelType type;
+        private final int maxConcurrentCalls;
+        private final int maxQueuedCalls;
+        private final Deque<CountDownLatch> interactiveWaiters = new ArrayDeque<>();
+        private final Deque<CountDownLatch> backgroundWaiters = new ArrayDeque<>();
+        private final Counter rejected;
+        private int active;
+
+        Lane(ModelType type, AppProperties.ModelLimit limit, MeterRegistry meterRegistry) {
+            this.type = type;
+            this.maxConcurrentCalls = Math.max(1, limit.getMaxConcurrentCalls());
+            this.maxQueuedCalls = limit.getMaxQueuedCalls();
+            String model = type.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("rag.model.calls.active", this, Lane::activeCount).tag("model", model)
+                .description("Model calls in flight").register(meterRegistry);
+            Gauge.builder("rag.model.calls.waiting", this, Lane::waitingCount).tag("model", model)
+                .description("Callers waiting for a model call slot").register(meterRegistry);
+            this.rejected = Counter.builder("rag.model.calls.rejected").tag("model", model)
+                .description("Model calls rejected because the queue was full or the wait too long")
+                .register(meterRegistry);
+        }
+
+        void acquire(boolean background) {
+            CountDownLatch granted;
+            synchronized (this) {
+                if (active < maxConcurrentCalls && interactiveWaiters.isEmpty() && backgroundWaiters.isEmpty()) {
+                    active++;
+                    return;
+                }
+                if (!background && interactiveWaiters.size() >= maxQueuedCalls) {
+                    rejected.increment();
+                    throw new ModelBusyException("The " + type.name().toLowerCase(Locale.ROOT)
+                        + " model is busy, please retry later");
+                }
+                granted = new CountDownLatch(1);
+                (background ? backgroundWaiters : interactiveWaiters).add(granted);
+            }
+
+            try {
+                if (background) {
+                    granted.await();
+                } else if (!granted.await(maxQueueWait.toMillis(), TimeUnit.MILLISECONDS)
+                        && leaveQueue(granted, interactiveWaiters)) {
+                    rejected.increment();
+                    logger.warn("Gave up waiting {}ms for a {} model slot", maxQueueWait.toMillis(), type);
+                    throw new ModelBusyException("Timed out waiting for the " + type.name().toLowerCase(Locale.ROOT)
+                        + " model, please retry later");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (leaveQueue(granted, background ? backgroundWaiters : interactiveWaiters)) {
+                    throw new RuntimeException("Interrupted while waiting for a model call slot", e);
+                }
+            }
+        }
+
+        /**
+         * Remove the waiter from the queue. Returns false when the slot was granted meanwhile,
+         * in which case the caller holds it.
+         */
+        private synchronized boolean leaveQueue(CountDownLatch granted, Deque<CountDownLatch> waiters) {
+            return waiters.remove(granted);
+        }
+
+        synchronized void release() {
+            CountDownLatch next = interactiveWaiters.poll();
+            if (next == null) {
+                next = backgroundWaiters.poll();
+            }
+            if (next != null) {
+                // Hand the slot over without releasing it
+                next.countDown();
+            } else {
+                active--;
+            }
+        }
+
+        synchronized int activeCount() {
+            return active;
+        }
+
+        synchronized int waitingCount() {
+            return interactiveWaiters.size() + backgroundWaiters.size();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.entity.QueryHistory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An event of a streamed query: the retrieval results, then answer tokens, then the saved query.
+ * A query that fails ends with an error event instead, or a busy event when the model rejected it.
+ * The name is used as the server-sent event name and the data is serialized as JSON.
+ */
+public record QueryStreamEvent(String name, Map<String, Object> data) {
+
+    public static final String RETRIEVAL = "retrieval";
+    public static final String TOKEN = "token";
+    public static final String DONE = "done";
+    public static final String ERROR = "error";
+    public static final String BUSY = "busy";
+
+    static QueryStreamEvent retrieval(String relevantDocuments, List<RetrievedChunk> chunks, boolean cached) {
+        List<Map<String, Object>> chunkData = chunks.stream()
+            .map(chunk -> {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("id", chunk.id());
+                item.put("documentId", chunk.documentId());
+                item.put("filename", chunk.filename());
+                item.put("chunkIndex", chunk.chunkIndex());
+                item.put("score", chunk.score());
+                return item;
+            })
+            .toList();
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("relevantDocuments", relevantDocuments != null ? relevantDocuments : "");
+        data.put("chunks", chunkData);
+        data.put("cached", cached);
+        return new QueryStreamEvent(RETRIEVAL, data);
+    }
+
+    static QueryStreamEvent token(String text) {
+        return new QueryStreamEvent(TOKEN, Map.of("text", text));
+    }
+
+    static QueryStreamEvent done(QueryHistory queryHistory) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", queryHistory.getId());
+        data.put("answer", queryHistory.getAnswer());
+        data.put("processingTime", queryHistory.getProcessingTimeMs());
+        data.put("queryDate", String.valueOf(queryHistory.getQueryDate()));
+        return new QueryStreamEvent(DONE, data);
+    }
+
+    static QueryStreamEvent error(String message) {
+        return new QueryStreamEvent(ERROR, Map.of("message", message));
+    }
+
+    static QueryStreamEvent busy(String message) {
+        return new QueryStreamEvent(BUSY, Map.of("message", message));
+    }
+}
@@ -1,51 +1,89 @@
 package com.luanvv.rag.service;
 
 import com.luanvv.rag.config.AppProperties;
-import com.luanvv.rag.entity.Document;
-import com.luanvv.rag.entity.DocumentChunk;
 import com.luanvv.rag.entity.QueryHistory;
 import com.luanvv.rag.repository.DocumentChunkRepository;
+import com.luanvv.rag.repository.DocumentReferenceView;
 import com.luanvv.rag.repository.DocumentRepository;
 import com.luanvv.rag.repository.QueryHistoryRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.List;
 import java.util.Collections;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
-import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.stream.Stream;
 
 /**
  * Service for handling RAG queries and generating responses.
+ * Not transactional: model calls take seconds, so database access is confined to short
+ * transactions around the retrieval reads and the query history write.
  */
 @Service
-@Transactional
 public class RagQueryService {
     
     private static final Logger logger = LoggerFactory.getLogger(RagQueryService.class);
+
+    private static final String ERROR_ANSWER =
+        "Sorry, I encountered an error while processing your question. Please try again.";
     
     private final DocumentChunkRepository documentChunkRepository;
     private final DocumentRepository documentRepository;
     private final QueryHistoryRepository queryHistoryRepository;
-    private final EmbeddingProvider embeddingProvider;
+    private final VectorChunkRetriever vectorChunkRetriever;
+    private final LexicalChunkRetriever lexicalChunkRetriever;
+    private final HybridChunkRetriever hybridChunkRetriever;
+    private final ThreadPoolTaskExecutor retrievalExecutor;
+    private final LocalIntentClassifier localIntentClassifier;
+    private final MapReduceAnswerService mapReduceAnswerService;
+    private final ContextPacker contextPacker;
+    private final MmrChunkReranker chunkReranker;
+    private final SemanticAnswerCache answerCache;
     private final AppProperties appProperties;
     private final ChatService chatService;
     
     public RagQueryService(DocumentChunkRepository documentChunkRepository,
                           DocumentRepository documentRepository,
                           QueryHistoryRepository queryHistoryRepository,
-                          EmbeddingProvider embeddingProvider,
+                          VectorChunkRetriever vectorChunkRetriever,
+                          LexicalChunkRetriever lexicalChunkRetriever,
+                          HybridChunkRetriever hybridChunkRetriever,
+                          @Qualifier("retrievalExecutor") ThreadPoolTaskExecutor retrievalExecutor,
+                          LocalIntentClassifier localIntentClassifier,
+                          MapReduceAnswerService mapReduceAnswerService,
+                          ContextPacker contextPacker,
+                          MmrChunkReranker chunkReranker,
+                          SemanticAnswerCache answerCache,
                           AppProperties appProperties,
                           ChatService chatService) {
         this.documentChunkRepository = documentChunkRepository;
         this.documentRepository = documentRepository;
         this.queryHistoryRepository = queryHistoryRepository;
-        this.embeddingProvider = embeddingProvider;
+        this.vectorChunkRetriever = vectorChunkRetriever;
+        this.lexicalChunkRetriever = lexicalChunkRetriever;
+        this.hybridChunkRetriever = hybridChunkRetriever;
+        this.retrievalExecutor = retrievalExecutor;
+        this.localIntentClassifier = localIntentClassifier;
+        this.mapReduceAnswerService = mapReduceAnswerService;
+        this.contextPacker = contextPacker;
+        this.chunkReranker = chunkReranker;
+        this.answerCache = answerCache;
         this.appProperties = appProperties;
         this.chatService = chatService;
     }
@@ -59,64 +97,267 @@ public class RagQueryService {
         long startTime = System.currentTimeMillis();
         
         try {
-            var queryResult = findResult(question);
+            SemanticAnswerCache.Lookup cacheLookup = answerCache.lookup(question, localIntentClassifier.documentScope(question));
+            QueryResult queryResult;
+            if (cacheLookup.isHit()) {
+                queryResult = QueryResult.from(cacheLookup.answer());
+            } else {
+                AnswerPlan plan = planAnswer(question);
+                Optional<String> modelAnswer = generatePlannedAnswer(plan);
+                queryResult = plan.toResult(modelAnswer.orElse(plan.fallbackAnswer()));
+                if (plan.isCacheable(modelAnswer.isPresent())) {
+                    answerCache.put(cacheLookup, queryResult.toCachedAnswer());
+                }
+            }
             
             long processingTime = System.currentTimeMillis() - startTime;
 
-            QueryHistory queryHistory = new QueryHistory(question, queryResult.getAnswer());
-            queryHistory.setRelevantDocuments(queryResult.getRelevantDocuments());
-            queryHistory.setProcessingTimeMs(processingTime);
-            
-            queryHistory = queryHistoryRepository.save(queryHistory);
+            QueryHistory queryHistory = saveQueryHistory(question, queryResult, processingTime);
             
             logger.info("Query processed in {}ms", processingTime);
             return queryHistory;
             
+        } catch (ModelBusyException e) {
+            logger.warn("Rejected query, chat model busy: {}", question);
+            throw e;
         } catch (Exception e) {
             logger.error("Error processing query: {}", question, e);
-            
-            QueryHistory errorQuery = new QueryHistory(question, "Sorry, I encountered an error while processing your question. Please try again.");
-            errorQuery.setProcessingTimeMs(System.currentTimeMillis() - startTime);
-            
-            return queryHistoryRepository.save(errorQuery);
+            return saveErrorQuery(question, startTime);
         }
     }
 
-    private QueryResult findResult(String question) {
+    /**
+     * Process a RAG query as a stream of events: the retrieval results first, then the answer
+     * tokens as the model produces them, and finally the saved query history.
+     * Retrieval and history writes run on a bounded elastic scheduler, never on the caller's thread.
+     */
+    public Flux<QueryStreamEvent> streamQuery(String question) {
+        logger.info("Streaming RAG query: {}", question);
+        long startTime = System.currentTimeMillis();
+
+        return Mono.fromCallable(() -> {
+                SemanticAnswerCache.Lookup cacheLookup = answerCache.lookup(question, localIntentClassifier.documentScope(question));
+                AnswerPlan plan = cacheLookup.isHit() ? AnswerPlan.from(cacheLookup.answer()) : planAnswer(question);
+                return new StreamPlan(cacheLookup, plan);
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMapMany(streamPlan -> streamAnswer(question, streamPlan, startTime))
+            .onErrorResume(ModelBusyException.class, e -> {
+                logger.warn("Rejected streamed query, chat model busy: {}", question);
+                return Mono.just(QueryStreamEvent.busy(e.getMessage()));
+            })
+            .onErrorResume(e -> {
+                logger.error("Error streaming query: {}", question, e);
+                return Mono.fromCallable(() -> saveErrorQuery(question, startTime))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .map(errorQuery -> QueryStreamEvent.error(errorQuery.getAnswer()))
+                    .onErrorReturn(QueryStreamEvent.error(ERROR_ANSWER));
+            });
+    }
+
+    private Flux<QueryStreamEvent> streamAnswer(String question, StreamPlan streamPlan, long startTime) {
+        AnswerPlan plan = streamPlan.plan();
+        boolean cached = streamPlan.cacheLookup().isHit();
+        StringBuilder answer = new StringBuilder();
+        AtomicBoolean generated = new AtomicBoolean();
+
+        Flux<String> tokens = plan.prompt() == null ? Flux.just(plan.fallbackAnswer()) : streamChatResponse(plan, generated);
+        return Flux.concat(
+            Mono.just(QueryStreamEvent.retrieval(plan.relevantDocuments(), plan.chunks(), cached)),
+            tokens.doOnNext(answer::append).map(QueryStreamEvent::token),
+            plan.answerNote() == null ? Mono.empty() : Mono.just(QueryStreamEvent.token("\n\n" + plan.answerNote())),
+            Mono.fromCallable(() -> {
+                    QueryResult queryResult = plan.toResult(answer.toString());
+                    if (!cached && plan.isCacheable(generated.get())) {
+                        answerCache.put(streamPlan.cacheLookup(), queryResult.toCachedAnswer());
+                    }
+                    long processingTime = System.currentTimeMillis() - startTime;
+                    logger.info("Streamed query processed in {}ms", processingTime);
+                    return QueryStreamEvent.done(saveQueryHistory(question, queryResult, processingTime));
+                })
+                .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * Stream the planned prompt. A model failure before the first token falls back to the plan's
+     * fallback answer; once tokens were sent, or when the model is busy, the error is propagated.
+     * {@code generated} is set once the model has produced a token.
+     */
+    private Flux<String> streamChatResponse(AnswerPlan plan, AtomicBoolean generated) {
+        return Flux.defer(() -> chatService.streamResponse(plan.prompt()))
+            .doOnNext(token -> generated.set(true))
+            .onErrorResume(e -> {
+                if (generated.get() || e instanceof ModelBusyException) {
+                    return Flux.error(e);
+                }
+                logger.warn("Failed to stream LLM response, using fallback: {}", e.getMessage());
+                return Flux.just(plan.fallbackAnswer());
+            })
+            .switchIfEmpty(Flux.defer(() -> Flux.just(plan.fallbackAnswer())));
+    }
+
+    private QueryHistory saveQueryHistory(String question, QueryResult queryResult, long processingTime) {
+        QueryHistory queryHistory = new QueryHistory(question, queryResult.getAnswer());
+        queryHistory.setRelevantDocuments(queryResult.getRelevantDocuments());
+        queryHistory.setRetrievalScores(queryResult.getRetrievalScores());
+        queryHistory.setProcessingTimeMs(processingTime);
+        return queryHistoryRepository.save(queryHistory);
+    }
+
+    private QueryHistory saveErrorQuery(String question, long startTime) {
+        QueryHistory errorQuery = new QueryHistory(question, ERROR_ANSWER);
+        errorQuery.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+        return queryHistoryRepository.save(errorQuery);
+    }
+
+    /**
+     * Decide how to answer the question: analyse it, retrieve the context and build the prompt.
+     * The model is not called for the answer itself, so the plan can be generated or streamed.
+     */
+    private AnswerPlan planAnswer(String question) {
+        // Cheap rule-based analysis first; the LLM analysis only runs when the rules are unsure
+        Optional<SearchAnalysis> localAnalysis = localIntentClassifier.classify(question);
+        
+        // Search the raw question while the LLM analysis runs; the result is used only if the analysis agrees
+        CompletableFuture<List<RetrievedChunk>> speculativeChunks =
+            localAnalysis.isPresent() ? null : startSpeculativeRetrieval(question);
+        
         // Analyze user question to determine search strategy
-            SearchAnalysis searchAnalysis = analyzeSearchIntent(question);
-            if (!searchAnalysis.getDocumentIds().isEmpty() || !searchAnalysis.getDocumentNames().isEmpty()) {
-                logger.info("Found specific documents in search analysis");
-                var documents = findReferencedDocument(searchAnalysis.getDocumentIds(), searchAnalysis.getDocumentNames());
-                if (!documents.isEmpty()) {
-                    var documentContent = documents.stream()
-                        .map(Document::getExtractedText)
-                        .collect(Collectors.toList());
-                    var answer = generateAnswerFromCompleteDocument(question, documentContent);
-                    String relevantDocuments = documents.stream()
-                        .map(Document::getFilename)
-                        .collect(Collectors.joining(", "));
-                    return new QueryResult(answer, relevantDocuments);
+        SearchAnalysis searchAnalysis;
+        AnswerPlan plan;
+        try {
+            searchAnalysis = localAnalysis.orElseGet(() -> analyzeSearchIntent(question));
+            plan = planForAnalysis(question, searchAnalysis, speculativeChunks);
+        } finally {
+            // No-op when the results were used; otherwise stop a search nobody will read
+            if (speculativeChunks != null) {
+                speculativeChunks.cancel(true);
+            }
+        }
+        
+        // The answer cache scope comes from the local rules; references only the LLM found are not part of it
+        boolean referencesDocuments = !searchAnalysis.getDocumentIds().isEmpty() || !searchAnalysis.getDocumentNames().isEmpty();
+        return localAnalysis.isEmpty() && referencesDocuments ? plan.withoutCaching() : plan;
+    }
+    
+    private AnswerPlan planForAnalysis(String question, SearchAnalysis searchAnalysis,
+                                       CompletableFuture<List<RetrievedChunk>> speculativeChunks) {
+        if (!searchAnalysis.getDocumentIds().isEmpty() || !searchAnalysis.getDocumentNames().isEmpty()) {
+            logger.info("Found specific documents in search analysis");
+            var documents = findReferencedDocument(searchAnalysis.getDocumentIds(), searchAnalysis.getDocumentNames());
+            if (!documents.isEmpty()) {
+                // Only explicit whole-document questions are mapped over the sections; topic questions get the relevant chunks
+                if (LocalIntentClassifier.asksAboutWholeDocument(question)) {
+                    return planFromDocuments(question, documents);
                 }
+                List<RetrievedChunk> scopedChunks = findRelevantChunksInDocuments(question, searchAnalysis.getSearchQuery(), documents);
+                return planFromChunks(question, rerank(scopedChunks), searchAnalysis);
+            }
 
+        }
+        List<RetrievedChunk> relevantChunks = List.of();
+        if (searchAnalysis.isNeedsDocumentSearch()) {
+            relevantChunks = rerank(resolveRelevantChunks(question, searchAnalysis.getSearchQuery(), speculativeChunks));
+        }
+        
+        return planFromChunks(question, relevantChunks, searchAnalysis);
+    }
+    
+    /**
+     * Start retrieving chunks for the raw question, or return null when speculation is disabled
+     * or there is nothing to search. Once the returned future is cancelled, searches that have not
+     * started yet are skipped.
+     */
+    private CompletableFuture<List<RetrievedChunk>> startSpeculativeRetrieval(String question) {
+        if (!appProperties.getQuery().isSpeculativeRetrieval() || !documentChunkRepository.existsAnyChunk()) {
+            return null;
+        }
+        
+        int maxResults = chunkReranker.candidateCount(appProperties.getVector().getMaxResults());
+        try {
+            if (appProperties.getVector().isHybridEnabled()) {
+                return hybridChunkRetriever.retrieveAsync(question, maxResults);
             }
-            List<DocumentChunk> relevantChunks = List.of();
-            if (searchAnalysis.isNeedsDocumentSearch()) {
-                relevantChunks = findRelevantChunks(searchAnalysis.getSearchQuery());
+            CompletableFuture<List<RetrievedChunk>> speculation = new CompletableFuture<>();
+            retrievalExecutor.execute(() -> {
+                if (speculation.isCancelled()) {
+                    return;
+                }
+                try {
+                    speculation.complete(retrieveWithFallback(question, maxResults));
+                } catch (RuntimeException e) {
+                    speculation.completeExceptionally(e);
+                }
+            });
+            return speculation;
+        } catch (Exception e) {
+            logger.warn("Failed to start speculative retrieval: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Use the speculative results when the analysed search query is close to the raw question,
+     * otherwise search again with the analysed query.
+     */
+    private List<RetrievedChunk> resolveRelevantChunks(String question, String searchQuery,
+                                                       CompletableFuture<List<RetrievedChunk>> speculativeChunks) {
+        if (speculativeChunks != null) {
+            double overlap = termOverlap(question, searchQuery);
+            if (overlap >= appProperties.getQuery().getSpeculativeMatchThreshold()) {
+                try {
+                    List<RetrievedChunk> chunks = speculativeChunks.join();
+                    logger.info("Using speculative retrieval results, term overlap {}", overlap);
+                    return chunks;
+                } catch (Exception e) {
+                    logger.warn("Speculative retrieval failed, searching again: {}", e.getMessage());
+                }
+            } else {
+                logger.info("Discarding speculative retrieval results, term overlap {}", overlap);
+                speculativeChunks.cancel(true);
             }
-            
-            String answer = generateAnswer(question, relevantChunks, searchAnalysis);
-            String relevantDocuments = getRelevantDocumentNames(relevantChunks);
-            return new QueryResult(answer, relevantDocuments);
+        }
+        return findRelevantChunks(searchQuery);
+    }
+    
+    /**
+     * Share of the search query terms that also occur in the question.
+     * Blank search queries count as a full match, since the question itself is then the best query.
+     */
+    static double termOverlap(String question, String searchQuery) {
+        Set<String> searchTerms = LexicalChunkRetriever.terms(searchQuery);
+        if (searchTerms.isEmpty()) {
+            return 1.0;
+        }
+        Set<String> questionTerms = LexicalChunkRetriever.terms(question);
+        long shared = searchTerms.stream().filter(questionTerms::contains).count();
+        return (double) shared / searchTerms.size();
     }
 
     private static class QueryResult {
         private final String answer;
         private final String relevantDocuments;
+        private final String retrievalScores;
+        private final List<Long> sourceChunkIds;
+        private final Set<Long> sourceDocumentIds;
 
-        public QueryResult(String answer, String relevantDocuments) {
+        public QueryResult(String answer, String relevantDocuments, String retrievalScores,
+                           List<Long> sourceChunkIds, Set<Long> sourceDocumentIds) {
             this.answer = answer;
             this.relevantDocuments = relevantDocuments;
+            this.retrievalScores = retrievalScores;
+            this.sourceChunkIds = sourceChunkIds;
+            this.sourceDocumentIds = sourceDocumentIds;
+        }
+
+        public static QueryResult from(SemanticAnswerCache.CachedAnswer cached) {
+            return new QueryResult(cached.answer(), cached.relevantDocuments(), cached.retrievalScores(),
+                cached.sourceChunkIds(), cached.sourceDocumentIds());
+        }
+
+        public SemanticAnswerCache.CachedAnswer toCachedAnswer() {
+            return new SemanticAnswerCache.CachedAnswer(answer, relevantDocuments, retrievalScores,
+                sourceChunkIds, sourceDocumentIds);
         }
 
         public String getAnswer() {
@@ -126,6 +367,55 @@ public class RagQueryService {
         public String getRelevantDocuments() {
             return relevantDocuments;
         }
+
+        public String getRetrievalScores() {
+            return retrievalScores;
+        }
+    }
+    
+    /**
+     * How a question is answered: the prompt for the model, or none when the fallback answer
+     * is final, together with the context the answer is based on. {@code cacheable} tells whether
+     * the answer may be cached; a final fallback answer is only cacheable when it is a real answer.
+     * The answer note, if any, is appended to the answer, e.g. to say that coverage was partial.
+     */
+    private record AnswerPlan(String prompt, String fallbackAnswer, List<RetrievedChunk> chunks,
+                              String relevantDocuments, String retrievalScores,
+                              List<Long> sourceChunkIds, Set<Long> sourceDocumentIds, boolean cacheable,
+                              String answerNote) {
+
+        AnswerPlan(String prompt, String fallbackAnswer, List<RetrievedChunk> chunks,
+                   String relevantDocuments, String retrievalScores,
+                   List<Long> sourceChunkIds, Set<Long> sourceDocumentIds, boolean cacheable) {
+            this(prompt, fallbackAnswer, chunks, relevantDocuments, retrievalScores,
+                sourceChunkIds, sourceDocumentIds, cacheable, null);
+        }
+
+        static AnswerPlan from(SemanticAnswerCache.CachedAnswer cached) {
+            return new AnswerPlan(null, cached.answer(), List.of(), cached.relevantDocuments(),
+                cached.retrievalScores(), cached.sourceChunkIds(), cached.sourceDocumentIds(), false);
+        }
+
+        AnswerPlan withoutCaching() {
+            return new AnswerPlan(prompt, fallbackAnswer, chunks, relevantDocuments, retrievalScores,
+                sourceChunkIds, sourceDocumentIds, false, answerNote);
+        }
+
+        /**
+         * Whether the answer may be cached, given whether the model generated it.
+         * Fallback answers used because the model failed are never cached.
+         */
+        boolean isCacheable(boolean modelGenerated) {
+            return cacheable && (prompt == null || modelGenerated);
+        }
+
+        QueryResult toResult(String answer) {
+            String fullAnswer = answerNote == null ? answer : answer + "\n\n" + answerNote;
+            return new QueryResult(fullAnswer, relevantDocuments, retrievalScores, sourceChunkIds, sourceDocumentIds);
+        }
+    }
+
+    private record StreamPlan(SemanticAnswerCache.Lookup cacheLookup, AnswerPlan plan) {
     }
     
     /**
@@ -174,12 +464,14 @@ public class RagQueryService {
                 """, question);
             var converter = new BeanOutputConverter<>(SearchAnalysis.class);
             return generateChatResponse(analysisPrompt, converter);
+        } catch (ModelBusyException e) {
+            throw e;
         } catch (Exception e) {
             logger.warn("Failed to analyze search intent, using fallback: {}", e.getMessage());
             // Fallback: create a SearchAnalysis with fallback values
             SearchAnalysis fallback = new SearchAnalysis();
             fallback.setNeedsDocumentSearch(true);
-            fallback.setSearchQuery(extractSimpleKeywords(question));
+            fallback.setSearchQuery(LocalIntentClassifier.extractSimpleKeywords(question));
             fallback.setQuestionType("mixed");
             fallback.setReasoning("Fallback analysis");
             fallback.setDocumentIds(Collections.emptyList());
@@ -189,139 +481,116 @@ public class RagQueryService {
     }
     
     /**
-     * Simple keyword extraction fallback.
-     */
-    private String extractSimpleKeywords(String question) {
-        return question.toLowerCase()
-            .replaceAll("\\b(what|how|when|where|why|who|can|could|would|should|please|tell|show|explain|describe|based on|from the|in the|documents?|files?)\\b", "")
-            .replaceAll("\\b(the|a|and|or|but|in|on|at|to|for|of|with|by|is|are|was|were)\\b", "")
-            .replaceAll("[^a-zA-Z0-9\\s-]", " ")
-            .replaceAll("\\s+", " ")
-            .trim();
-    }
-
-    /**
-     * Find relevant chunks for the search query using vector similarity search.
-     */
-    private List<DocumentChunk> findRelevantChunks(String searchQuery) {
-        try {
-            // First check if we have any documents at all
-            long totalChunks = documentChunkRepository.count();
-            logger.info("Total chunks in database: {}", totalChunks);
-            
-            if (totalChunks == 0) {
-                logger.warn("No document chunks found in database. Please upload documents first.");
-                return List.of();
-            }
-            
-            // Check chunks with embeddings
-            List<DocumentChunk> chunksWithoutEmbeddings = documentChunkRepository.findChunksWithoutEmbeddings();
-            logger.info("Chunks without embeddings: {}", chunksWithoutEmbeddings.size());
-            
-            // Generate embedding for the search query
-            float[] queryEmbedding = embeddingProvider.generateEmbedding(searchQuery);
-            String queryVector = convertEmbeddingToVector(queryEmbedding);
-            
-            // Use vector similarity search
-            double threshold = appProperties.getVector().getSimilarityThreshold();
-            int maxResults = appProperties.getVector().getMaxResults();
-            
-            logger.info("Searching for similar chunks with threshold: {} and max results: {}", threshold, maxResults);
-            
-            List<DocumentChunk> similarChunks = documentChunkRepository.findSimilarChunks(queryVector, maxResults);
-            logger.info("Found {} similar chunks", similarChunks.size());
-            
-            // If no similar chunks found with current threshold, try without threshold
-            if (similarChunks.isEmpty()) {
-                logger.warn("No chunks found with threshold {}, trying without threshold", threshold);
-                // Get all chunks with embeddings and return top matches
-                List<DocumentChunk> allChunksWithEmbeddings = documentChunkRepository.findAll()
-                    .stream()
-                    .filter(chunk -> chunk.getEmbeddingVector() != null)
-                    .toList();
-                
-                logger.info("Total chunks with embeddings: {}", allChunksWithEmbeddings.size());
-                
-                if (!allChunksWithEmbeddings.isEmpty()) {
-                    // Return first few chunks as fallback
-                    return allChunksWithEmbeddings.stream()
-                        .limit(maxResults)
-                        .collect(Collectors.toList());
-                }
-            }
-            
-            return similarChunks;
-            
-        } catch (Exception e) {
-            logger.warn("Failed to perform vector search, falling back to simple search: {}", e.getMessage());
-            
-            // Fallback to simple keyword search
-            return performSimpleKeywordSearch(searchQuery);
-        }
-    }
-    
-    /**
-     * Fallback simple keyword search when vector search fails.
+     * Find relevant chunks for the search query.
+     * In hybrid mode vector and full-text results are fused. Otherwise vector search is used,
+     * falling back to full-text search when the embedding model is unavailable or
+     * no chunk passes the similarity threshold (e.g. chunks stored without embeddings).
      */
-    private List<DocumentChunk> performSimpleKeywordSearch(String searchQuery) {
-        List<DocumentChunk> allChunks = documentChunkRepository.findAll();
-        
-        if (allChunks.isEmpty()) {
+    private List<RetrievedChunk> findRelevantChunks(String searchQuery) {
+        // First check if we have any documents at all (skips the embedding call on an empty corpus)
+        if (!documentChunkRepository.existsAnyChunk()) {
+            logger.warn("No document chunks found in database. Please upload documents first.");
             return List.of();
         }
         
-        // Simple keyword-based filtering
-        String[] keywords = searchQuery.toLowerCase().split("\\s+");
-        
-        return allChunks.stream()
-                .filter(chunk -> containsKeywords(chunk.getChunkText().toLowerCase(), keywords))
-                .limit(appProperties.getVector().getMaxResults())
-                .collect(Collectors.toList());
+        int maxResults = chunkReranker.candidateCount(appProperties.getVector().getMaxResults());
+        if (appProperties.getVector().isHybridEnabled()) {
+            return hybridChunkRetriever.retrieve(searchQuery, maxResults);
+        }
+        return retrieveWithFallback(searchQuery, maxResults);
     }
     
     /**
-     * Convert float array embedding to PostgreSQL vector format.
+     * Search restricted to the referenced documents: vector search, falling back to full-text search
+     * within the same documents when the embedding model is unavailable or busy, or no chunk passes
+     * the similarity threshold. A blank search query searches the question itself.
      */
-    private String convertEmbeddingToVector(float[] embedding) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        for (int i = 0; i < embedding.length; i++) {
-            if (i > 0) {
-                sb.append(",");
+    private List<RetrievedChunk> findRelevantChunksInDocuments(String question, String searchQuery,
+                                                               List<DocumentReferenceView> documents) {
+        String query = searchQuery == null || searchQuery.isBlank() ? question : searchQuery;
+        List<Long> documentIds = documents.stream().map(DocumentReferenceView::getContentDocumentId).distinct().toList();
+        int maxResults = chunkReranker.candidateCount(appProperties.getVector().getMaxResults());
+        try {
+            List<RetrievedChunk> similarChunks = vectorChunkRetriever.retrieveFromDocuments(query, documentIds, maxResults);
+            if (!similarChunks.isEmpty()) {
+                return similarChunks;
             }
-            sb.append(embedding[i]);
+            logger.info("No chunks of documents {} passed the similarity threshold, trying full-text search", documentIds);
+        } catch (Exception e) {
+            logger.warn("Failed to search within documents {}, falling back to full-text search: {}", documentIds, e.getMessage());
         }
-        sb.append("]");
-        return sb.toString();
+        return lexicalChunkRetriever.retrieveFromDocuments(query, documentIds, maxResults);
     }
     
     /**
-     * Check if text contains any of the keywords.
+     * Reduce the retrieved candidates to the final chunks, diversified by MMR when enabled.
      */
-    private boolean containsKeywords(String text, String[] keywords) {
-        for (String keyword : keywords) {
-            if (text.contains(keyword)) {
-                return true;
+    private List<RetrievedChunk> rerank(List<RetrievedChunk> candidates) {
+        return chunkReranker.rerank(candidates, appProperties.getVector().getMaxResults());
+    }
+    
+    private List<RetrievedChunk> retrieveWithFallback(String searchQuery, int maxResults) {
+        try {
+            List<RetrievedChunk> similarChunks = vectorChunkRetriever.retrieve(searchQuery, maxResults);
+            if (!similarChunks.isEmpty()) {
+                return similarChunks;
             }
+            logger.info("No chunks passed the similarity threshold, trying full-text search");
+            
+        } catch (Exception e) {
+            logger.warn("Failed to perform vector search, falling back to full-text search: {}", e.getMessage());
         }
-        return false;
+        
+        return lexicalChunkRetriever.retrieve(searchQuery, maxResults);
     }
     
     /**
-     * Generate answer based on question, relevant chunks, and search analysis using LLM.
+     * Plan the answer based on question, relevant chunks, and search analysis.
      */
-    private String generateAnswer(String question, List<DocumentChunk> relevantChunks, SearchAnalysis searchAnalysis) {
+    private AnswerPlan planFromChunks(String question, List<RetrievedChunk> relevantChunks, SearchAnalysis searchAnalysis) {
+        String relevantDocuments = getRelevantDocumentNames(relevantChunks);
+        String retrievalScores = formatRetrievalScores(relevantChunks);
+        List<Long> sourceChunkIds = relevantChunks.stream().map(RetrievedChunk::id).toList();
+        Set<Long> sourceDocumentIds = relevantChunks.stream().map(RetrievedChunk::documentId).collect(Collectors.toSet());
+
         // Handle questions that don't need document search
         if (!searchAnalysis.isNeedsDocumentSearch()) {
-            return generateGeneralAnswer(question);
+            return new AnswerPlan(buildGeneralPrompt(question),
+                "I can help with general questions, but I encountered an error processing your question.",
+                relevantChunks, relevantDocuments, retrievalScores, sourceChunkIds, sourceDocumentIds, true);
         }
         // Handle document-specific questions
         if (relevantChunks.isEmpty()) {
             logger.info("No relevant chunks found for search query: {}", searchAnalysis.getSearchQuery());
-            return generateEmptyAnswer(question, searchAnalysis);
+            return new AnswerPlan(null, generateEmptyAnswer(question, searchAnalysis),
+                relevantChunks, relevantDocuments, retrievalScores, sourceChunkIds, sourceDocumentIds, false);
+        }
+        return new AnswerPlan(buildChunkPrompt(question, relevantChunks, searchAnalysis),
+            fallbackToSimpleAnswer(question, relevantChunks),
+            relevantChunks, relevantDocuments, retrievalScores, sourceChunkIds, sourceDocumentIds, true);
+    }
+
+    /**
+     * Generate the planned answer with the LLM. Empty when the plan has no prompt or the model
+     * fails or returns nothing, in which case the plan's fallback answer is used.
+     * A busy model is not a failure: the rejection is propagated so the client can retry.
+     */
+    private Optional<String> generatePlannedAnswer(AnswerPlan plan) {
+        if (plan.prompt() == null) {
+            return Optional.empty();
         }
-        return generateAnswerFromChunks(question, relevantChunks, searchAnalysis);
 
+        try {
+            String answer = generateChatResponse(plan.prompt());
+            if (answer != null && !answer.trim().isEmpty()) {
+                return Optional.of(answer.trim());
+            }
+        } catch (ModelBusyException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.warn("Failed to generate LLM response, using fallback: {}", e.getMessage());
+        }
+        return Optional.empty();
     }
 
     private String generateEmptyAnswer(String originalQuestion, SearchAnalysis searchAnalysis) {
@@ -342,7 +611,7 @@ public class RagQueryService {
     /**
      * Find a document referenced in the user's question by ID or filename.
      */
-    private List<Document> findReferencedDocument(List<Integer> documentIds, List<String> documentNames) {
+    private List<DocumentReferenceView> findReferencedDocument(List<Integer> documentIds, List<String> documentNames) {
         if (documentIds.isEmpty() && documentNames.isEmpty()) {
             return List.of();
         }
@@ -350,81 +619,55 @@ public class RagQueryService {
         logger.info("Finding referenced documents by IDs: {} and names: {}", documentIds, documentNames);
 
         // Find documents by IDs
-        List<Document> documents = documentRepository.getDocumentExtractedTextByIdsOrNames(new HashSet<>(documentIds), new HashSet<>(documentNames));
+        List<DocumentReferenceView> documents = documentRepository.findReferencedDocuments(new HashSet<>(documentIds), new HashSet<>(documentNames));
         logger.info("Found {} documents", documents.size());
         return documents;
     }
 
     /**
-     * Generate answer by analyzing the complete text content of a specific document.
+     * Plan the answer for whole referenced documents with map-reduce: the sections are answered
+     * now, and the plan combines their partial answers. The documents' full text is never loaded.
      */
-    private String generateAnswerFromCompleteDocument(String question, List<String> documents) {
-        if (documents.isEmpty()) {
-            return "I couldn't find any documents to analyze for your question. Please ensure you have uploaded documents.";
+    private AnswerPlan planFromDocuments(String question, List<DocumentReferenceView> documents) {
+        String relevantDocuments = documents.stream()
+            .map(DocumentReferenceView::getFilename)
+            .collect(Collectors.joining(", "));
+        // Duplicate uploads also depend on the document that owns their chunks
+        Set<Long> sourceDocumentIds = documents.stream()
+            .flatMap(document -> Stream.of(document.getId(), document.getContentDocumentId()))
+            .collect(Collectors.toSet());
+
+        MapReduceAnswerService.MapResult mapResult = mapReduceAnswerService.collectPartialAnswers(question, documents);
+        List<String> partialAnswers = mapResult.partialAnswers();
+        String coverageNote = mapResult.isPartial()
+            ? String.format("Note: %s %s too long to read in full; this answer is based on %d of %d sections.",
+                relevantDocuments, documents.size() == 1 ? "is" : "are", mapResult.mappedSections(), mapResult.totalSections())
+            : null;
+        if (partialAnswers.isEmpty()) {
+            return new AnswerPlan(null,
+                "I analyzed " + relevantDocuments + " but couldn't find information that answers your question.",
+                List.of(), relevantDocuments, null, List.of(), sourceDocumentIds, false, coverageNote);
         }
-        documents.forEach(document -> logger.info("Analyzing document: {}", document));
-
-        var documentContent = documents.stream()
-            .collect(Collectors.joining("\n\n---\n\n"));
-        // Create a prompt that includes the entire document content
-        String prompt = String.format("""
-            Based on the complete content of the multiple documents, please answer the following question:
-
-            QUESTION: %s
-            
-            COMPLETE DOCUMENT CONTENT:
-            %s
-            
-            INSTRUCTIONS:
-            - Provide a comprehensive answer based on the entire document content
-            - If the document doesn't contain information to answer the question, state this clearly
-            - Reference specific sections or parts of the document when relevant
-            - Be thorough but concise in your response
-            """, question, documentContent);
-
-        try {
-            // Call the LLM with the complete document context
-            String response = generateChatResponse(prompt);
-            
-            // Add document metadata to the response
-            return response.trim();
-
-        } catch (Exception e) {
-            logger.error("Error analyzing complete documents", e);
-            return "I encountered an error while analyzing the complete documents. Please try again or rephrase your question.";
+        if (partialAnswers.size() == 1) {
+            return new AnswerPlan(null, partialAnswers.get(0),
+                List.of(), relevantDocuments, null, List.of(), sourceDocumentIds, true, coverageNote);
         }
+        return new AnswerPlan(mapReduceAnswerService.buildReducePrompt(question, partialAnswers),
+            String.join("\n\n", partialAnswers),
+            List.of(), relevantDocuments, null, List.of(), sourceDocumentIds, true, coverageNote);
     }
 
-    private String generateAnswerFromChunks(String question, List<DocumentChunk> relevantChunks,
+    private String buildChunkPrompt(String question, List<RetrievedChunk> relevantChunks,
         SearchAnalysis searchAnalysis) {
-        // Build context from relevant chunks
-        StringBuilder contextBuilder = new StringBuilder();
-        for (DocumentChunk chunk : relevantChunks) {
-            contextBuilder.append(chunk.getChunkText()).append("\n\n");
-        }
-        String context = contextBuilder.toString().trim();
+        // Build context from relevant chunks within the token budget
+        String context = contextPacker.pack(relevantChunks);
 
         // Create enhanced RAG prompt with search context
-        String prompt = buildEnhancedRagPrompt(question, context, searchAnalysis);
-
-        try {
-            // Use Ollama to generate the answer
-            String answer = generateChatResponse(prompt);
-
-            if (answer != null && !answer.trim().isEmpty()) {
-                return answer.trim();
-            } else {
-                return fallbackToSimpleAnswer(question, relevantChunks);
-            }
-
-        } catch (Exception e) {
-            logger.warn("Failed to generate LLM response, using fallback: {}", e.getMessage());
-            return fallbackToSimpleAnswer(question, relevantChunks);
-        }
+        return buildEnhancedRagPrompt(question, context, searchAnalysis);
     }
 
-    private String generateGeneralAnswer(String question) {
-        String generalPrompt = String.format("""
+    private String buildGeneralPrompt(String question) {
+        return String.format("""
                 Answer this general knowledge question:
                 
                 Question: %s
@@ -435,15 +678,6 @@ public class RagQueryService {
                 - Use your general knowledge to provide a comprehensive response
                 
                 Answer:""", question);
-
-        try {
-            String answer = generateChatResponse(generalPrompt);
-            return answer != null && !answer.trim().isEmpty() ? answer.trim() :
-                "I can help with general questions, but I don't have enough information to answer this specific question.";
-        } catch (Exception e) {
-            logger.warn("Failed to generate general knowledge response: {}", e.getMessage());
-            return "I can help with general questions, but I encountered an error processing your question.";
-        }
     }
     
     /**
@@ -504,14 +738,14 @@ public class RagQueryService {
     /**
      * Fallback to simple answer when LLM fails.
      */
-    private String fallbackToSimpleAnswer(String question, List<DocumentChunk> relevantChunks) {
+    private String fallbackToSimpleAnswer(String question, List<RetrievedChunk> relevantChunks) {
         StringBuilder contextBuilder = new StringBuilder();
         contextBuilder.append("Based on the uploaded documents, here's what I found:\n\n");
         
         int maxChunks = Math.min(3, relevantChunks.size());
         for (int i = 0; i < maxChunks; i++) {
-            DocumentChunk chunk = relevantChunks.get(i);
-            contextBuilder.append("• ").append(truncateText(chunk.getChunkText(), 200)).append("\n\n");
+            RetrievedChunk chunk = relevantChunks.get(i);
+            contextBuilder.append("• ").append(truncateText(chunk.chunkText(), 200)).append("\n\n");
         }
         
         if (relevantChunks.size() > maxChunks) {
@@ -524,13 +758,25 @@ public class RagQueryService {
     /**
      * Get names of documents that contain relevant chunks.
      */
-    private String getRelevantDocumentNames(List<DocumentChunk> chunks) {
+    private String getRelevantDocumentNames(List<RetrievedChunk> chunks) {
         return chunks.stream()
-                .map(chunk -> chunk.getDocument().getFilename())
+                .map(RetrievedChunk::filename)
                 .distinct()
                 .collect(Collectors.joining(", "));
     }
     
+    /**
+     * Format chunk scores for query history as "chunkId=score" pairs, best first.
+     */
+    private String formatRetrievalScores(List<RetrievedChunk> chunks) {
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        return chunks.stream()
+                .map(chunk -> String.format(Locale.ROOT, "%d=%.4f", chunk.id(), chunk.score()))
+                .collect(Collectors.joining(","));
+    }
+    
     /**
      * Truncate text to specified length.
      */
@@ -544,6 +790,7 @@ public class RagQueryService {
     /**
      * Get query history.
      */
+    @Transactional(readOnly = true)
     public List<QueryHistory> getQueryHistory() {
         return queryHistoryRepository.findAllByOrderByQueryDateDesc();
     }
@@ -551,52 +798,8 @@ public class RagQueryService {
     /**
      * Get recent query history.
      */
+    @Transactional(readOnly = true)
     public List<QueryHistory> getRecentQueries(int limit) {
-        List<QueryHistory> allQueries = getQueryHistory();
-        return allQueries.stream()
-                .limit(limit)
-                .collect(Collectors.toList());
-    }
-    
-    /**
-     * DTO class for parsing JSON response from LLM.
-     */
-    private static class SearchAnalysis {
-        @JsonProperty("needs_document_search")
-        private boolean needsDocumentSearch;
-        
-        @JsonProperty("document_ids")
-        private List<Integer> documentIds = Collections.emptyList();
-        
-        @JsonProperty("document_names") 
-        private List<String> documentNames = Collections.emptyList();
-        
-        @JsonProperty("search_query")
-        private String searchQuery;
-        
-        @JsonProperty("question_type")
-        private String questionType;
-        
-        @JsonProperty("reasoning")
-        private String reasoning;
-        
-        // Default constructor for Jackson
-        public SearchAnalysis() {}
-        
-        // Getters
-        public boolean isNeedsDocumentSearch() { return needsDocumentSearch; }
-        public List<Integer> getDocumentIds() { return documentIds != null ? documentIds : Collections.emptyList(); }
-        public List<String> getDocumentNames() { return documentNames != null ? documentNames : Collections.emptyList(); }
-        public String getSearchQuery() { return searchQuery; }
-        public String getQuestionType() { return questionType; }
-        public String getReasoning() { return reasoning; }
-        
-        // Setters
-        public void setNeedsDocumentSearch(boolean needsDocumentSearch) { this.needsDocumentSearch = needsDocumentSearch; }
-        public void setDocumentIds(List<Integer> documentIds) { this.documentIds = documentIds; }
-        public void setDocumentNames(List<String> documentNames) { this.documentNames = documentNames; }
-        public void setSearchQuery(String searchQuery) { this.searchQuery = searchQuery; }
-        public void setQuestionType(String questionType) { this.questionType = questionType; }
-        public void setReasoning(String reasoning) { this.reasoning = reasoning; }
+        return queryHistoryRepository.findAllByOrderByQueryDateDesc(PageRequest.of(0, limit));
     }
 }
@@ -0,0 +1,27 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.repository.DocumentChunkView;
+import com.luanvv.rag.repository.ScoredChunkView;
+
+/**
+ * A chunk selected for answering a question, with the score it was retrieved by.
+ */
+public record RetrievedChunk(Long id, Long documentId, String filename,
+                             String chunkText, Integer chunkIndex, double score) {
+
+    public static RetrievedChunk from(ScoredChunkView view) {
+        return from(view, view.getScore() != null ? view.getScore() : 0.0);
+    }
+
+    public static RetrievedChunk from(DocumentChunkView view, double score) {
+        return new RetrievedChunk(view.getId(), view.getDocumentId(), view.getFilename(),
+            view.getChunkText(), view.getChunkIndex(), score);
+    }
+
+    /**
+     * Copy of this chunk carrying a different score.
+     */
+    public RetrievedChunk withScore(double newScore) {
+        return new RetrievedChunk(id, documentId, filename, chunkText, chunkIndex, newScore);
+    }
+}
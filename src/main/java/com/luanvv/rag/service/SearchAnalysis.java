@@ -0,0 +1,49 @@
+package com.luanvv.rag.service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Search strategy for a question.
+ * Produced by the local intent classifier or parsed from the LLM's JSON response.
+ */
+public class SearchAnalysis {
+    @JsonProperty("needs_document_search")
+    private boolean needsDocumentSearch;
+    
+    @JsonProperty("document_ids")
+    private List<Integer> documentIds = Collections.emptyList();
+    
+    @JsonProperty("document_names") 
+    private List<String> documentNames = Collections.emptyList();
+    
+    @JsonProperty("search_query")
+    private String searchQuery;
+    
+    @JsonProperty("question_type")
+    private String questionType;
+    
+    @JsonProperty("reasoning")
+    private String reasoning;
+    
+    // Default constructor for Jackson
+    public SearchAnalysis() {}
+    
+    // Getters
+    public boolean isNeedsDocumentSearch() { return needsDocumentSearch; }
+    public List<Integer> getDocumentIds() { return documentIds != null ? documentIds : Collections.emptyList(); }
+    public List<String> getDocumentNames() { return documentNames != null ? documentNames : Collections.emptyList(); }
+    public String getSearchQuery() { return searchQuery; }
+    public String getQuestionType() { return questionType; }
+    public String getReasoning() { return reasoning; }
+    
+    // Setters
+    public void setNeedsDocumentSearch(boolean needsDocumentSearch) { this.needsDocumentSearch = needsDocumentSearch; }
+    public void setDocumentIds(List<Integer> documentIds) { this.documentIds = documentIds; }
+    public void setDocumentNames(List<String> documentNames) { this.documentNames = documentNames; }
+    public void setSearchQuery(String searchQuery) { this.searchQuery = searchQuery; }
+    public void setQuestionType(String questionType) { this.questionType = questionType; }
+    public void setReasoning(String reasoning) { this.reasoning = reasoning; }
+}
@@ -0,0 +1,221 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of answers keyed by the embedding of the question and its document scope.
+ * A new question reuses a cached answer when it references exactly the same documents and the
+ * cosine similarity of the two questions reaches the configured threshold, so "summarize doc 3"
+ * never gets the answer for doc 4. Entries remember their source documents and are dropped
+ * when one of those documents is re-ingested or deleted.
+ */
+@Service
+public class SemanticAnswerCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SemanticAnswerCache.class);
+
+    private final EmbeddingProvider embeddingProvider;
+    private final AppProperties appProperties;
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong nextEntryId = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public SemanticAnswerCache(EmbeddingProvider embeddingProvider, AppProperties appProperties,
+                               MeterRegistry meterRegistry) {
+        this.embeddingProvider = embeddingProvider;
+        this.appProperties = appProperties;
+        this.hits = Counter.builder("rag.answer.cache.lookups").tag("result", "hit")
+            .description("Answer cache lookups").register(meterRegistry);
+        this.misses = Counter.builder("rag.answer.cache.lookups").tag("result", "miss")
+            .description("Answer cache lookups").register(meterRegistry);
+        this.evictions = Counter.builder("rag.answer.cache.evictions")
+            .description("Answer cache entries removed by size, TTL or invalidation").register(meterRegistry);
+        Gauge.builder("rag.answer.cache.size", this, SemanticAnswerCache::size)
+            .description("Answer cache entries").register(meterRegistry);
+        Gauge.builder("rag.answer.cache.hit.ratio", this, SemanticAnswerCache::getHitRate)
+            .description("Share of answer cache lookups that were hits").register(meterRegistry);
+    }
+
+    /**
+     * Embed the question and look for a cached answer to a similar question with the same scope.
+     * The scope identifies the documents the question references, empty when it references none.
+     * The returned lookup is passed back to {@link #put} on a miss.
+     */
+    public Lookup lookup(String question, String scope) {
+        AppProperties.AnswerCache config = appProperties.getAnswerCache();
+        if (!config.isEnabled()) {
+            return Lookup.DISABLED;
+        }
+
+        long lookupGeneration = generation.get();
+        float[] embedding;
+        try {
+            embedding = normalize(embeddingProvider.generateEmbedding(question));
+        } catch (Exception e) {
+            logger.warn("Failed to embed question for answer cache lookup: {}", e.getMessage());
+            return Lookup.DISABLED;
+        }
+
+        CachedAnswer best = null;
+        double bestSimilarity = config.getSimilarityThreshold();
+        Instant expiredBefore = Instant.now().minus(config.getTtl());
+        synchronized (this) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.createdAt().isBefore(expiredBefore)) {
+                    iterator.remove();
+                    evictions.increment();
+                    continue;
+                }
+                if (!Objects.equals(entry.scope(), scope)) {
+                    continue;
+                }
+                double similarity = dot(embedding, entry.embedding());
+                if (similarity >= bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = entry.answer();
+                }
+            }
+        }
+
+        if (best != null) {
+            hits.increment();
+            logger.info("Answer cache hit with similarity {}", bestSimilarity);
+        } else {
+            misses.increment();
+        }
+        return new Lookup(embedding, scope, lookupGeneration, best);
+    }
+
+    /**
+     * Cache the answer computed after a missed lookup.
+     * Ignored when a document was invalidated since the lookup, since the answer may be based on it.
+     */
+    public void put(Lookup lookup, CachedAnswer answer) {
+        if (lookup.embedding() == null || answer.sourceDocumentIds().isEmpty()) {
+            return;
+        }
+
+        int maxEntries = appProperties.getAnswerCache().getMaxEntries();
+        synchronized (this) {
+            if (lookup.generation() != generation.get()) {
+                logger.debug("Not caching answer computed across a document invalidation");
+                return;
+            }
+            entries.put(nextEntryId.incrementAndGet(), new Entry(lookup.embedding(), lookup.scope(), answer, Instant.now()));
+
+            // Access-ordered map: the first entries are the least recently used
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Drop cached answers built from the document.
+     * Inside a transaction this happens after commit, so a concurrent query cannot re-cache old content.
+     */
+    public void invalidateDocument(Long documentId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeDocument(documentId);
+                }
+            });
+        } else {
+            removeDocument(documentId);
+        }
+    }
+
+    /**
+     * Share of lookups served from the cache since startup.
+     */
+    public double getHitRate() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0.0 : hits.count() / total;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized void removeDocument(Long documentId) {
+        generation.incrementAndGet();
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.answer().sourceDocumentIds().contains(documentId));
+        int removed = before - entries.size();
+        if (removed > 0) {
+            evictions.increment(removed);
+            logger.info("Invalidated {} cached answers for document {}", removed, documentId);
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                normalized[i] = (float) (vector[i] / norm);
+            }
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0.0;
+        }
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * An answer with the chunks and documents it was generated from.
+     */
+    public record CachedAnswer(String answer, String relevantDocuments, String retrievalScores,
+                               List<Long> sourceChunkIds, Set<Long> sourceDocumentIds) {
+    }
+
+    /**
+     * Result of a lookup: the hit, if any, and what is needed to cache the answer on a miss.
+     */
+    public record Lookup(float[] embedding, String scope, long generation, CachedAnswer answer) {
+
+        static final Lookup DISABLED = new Lookup(null, null, 0, null);
+
+        public boolean isHit() {
+            return answer != null;
+        }
+    }
+
+    private record Entry(float[] embedding, String scope, CachedAnswer answer, Instant createdAt) {
+    }
+}
@@ -0,0 +1,176 @@
+package com.luanvv.rag.service;
+
+/**
+ * Single-pass filter that removes thinking spans such as {@code <think>...</think>} from model output.
+ * Text is fed in chunks of any size; a tag split across chunks is held back until it can be
+ * told apart from ordinary text. Leading and trailing whitespace is dropped and runs of blank
+ * lines are collapsed, so the concatenated output equals {@link #strip} of the full response.
+ * An instance keeps the state of one response and is not thread-safe.
+ */
+public final class ThinkingTagFilter {
+
+    private static final String[] TAG_NAMES = {"think", "thinking", "thought", "reasoning", "analysis"};
+    private static final int MAX_TAG_LENGTH = "</reasoning>".length();
+
+    private final StringBuilder pendingTag = new StringBuilder(MAX_TAG_LENGTH);
+    private final StringBuilder pendingWhitespace = new StringBuilder();
+    private String openSpan;
+    private boolean started;
+    private int removedSpans;
+
+    /**
+     * Remove thinking spans from a complete response.
+     */
+    public static String strip(String response) {
+        if (response == null) {
+            return null;
+        }
+        ThinkingTagFilter filter = new ThinkingTagFilter();
+        return filter.accept(response) + filter.finish();
+    }
+
+    /**
+     * Consume the next chunk and return the text that can be shown now, possibly empty.
+     */
+    public String accept(CharSequence chunk) {
+        StringBuilder out = new StringBuilder(chunk.length());
+        for (int i = 0; i < chunk.length(); i++) {
+            accept(chunk.charAt(i), out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * End of the response: release a held-back partial tag that turned out to be text.
+     * An unclosed thinking span is dropped.
+     */
+    public String finish() {
+        StringBuilder out = new StringBuilder(pendingTag.length());
+        if (openSpan == null) {
+            for (int i = 0; i < pendingTag.length(); i++) {
+                emit(pendingTag.charAt(i), out);
+            }
+        }
+        pendingTag.setLength(0);
+        pendingWhitespace.setLength(0);
+        return out.toString();
+    }
+
+    /**
+     * Number of thinking spans removed so far.
+     */
+    public int getRemovedSpans() {
+        return removedSpans;
+    }
+
+    private void accept(char c, StringBuilder out) {
+        if (pendingTag.length() == 0) {
+            if (c == '<') {
+                pendingTag.append(c);
+            } else if (openSpan == null) {
+                emit(c, out);
+            }
+            return;
+        }
+
+        pendingTag.append(c);
+        String tagName = completeTagName();
+        if (tagName != null) {
+            handleTag(tagName, pendingTag.charAt(1) == '/');
+            pendingTag.setLength(0);
+        } else if (!isTagPrefix()) {
+            // Only the first character can start a tag, except for a new '<' at the end
+            boolean restart = c == '<';
+            int length = restart ? pendingTag.length() - 1 : pendingTag.length();
+            if (openSpan == null) {
+                for (int i = 0; i < length; i++) {
+                    emit(pendingTag.charAt(i), out);
+                }
+            }
+            pendingTag.setLength(0);
+            if (restart) {
+                pendingTag.append('<');
+            }
+        }
+    }
+
+    private void handleTag(String tagName, boolean closing) {
+        if (openSpan == null && !closing) {
+            openSpan = tagName;
+        } else if (closing && tagName.equals(openSpan)) {
+            openSpan = null;
+            removedSpans++;
+        }
+        // Stray closing tags and tags nested inside a span are dropped
+    }
+
+    /**
+     * Hold whitespace back until visible text follows, which trims both ends and collapses blank lines.
+     */
+    private void emit(char c, StringBuilder out) {
+        if (Character.isWhitespace(c)) {
+            if (started) {
+                pendingWhitespace.append(c);
+            }
+            return;
+        }
+        if (pendingWhitespace.length() > 0) {
+            if (countNewlines(pendingWhitespace) >= 3) {
+                out.append("\n\n");
+            } else {
+                out.append(pendingWhitespace);
+            }
+            pendingWhitespace.setLength(0);
+        }
+        out.append(c);
+        started = true;
+    }
+
+    private String completeTagName() {
+        int length = pendingTag.length();
+        if (length < 3 || pendingTag.charAt(length - 1) != '>') {
+            return null;
+        }
+        int nameStart = pendingTag.charAt(1) == '/' ? 2 : 1;
+        for (String name : TAG_NAMES) {
+            if (length - nameStart - 1 == name.length() && regionMatches(name, nameStart, name.length())) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private boolean isTagPrefix() {
+        int length = pendingTag.length();
+        if (length > MAX_TAG_LENGTH) {
+            return false;
+        }
+        int nameStart = length > 1 && pendingTag.charAt(1) == '/' ? 2 : 1;
+        int nameLength = length - nameStart;
+        for (String name : TAG_NAMES) {
+            if (nameLength <= name.length() && regionMatches(name, nameStart, nameLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionMatches(String name, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (pendingTag.charAt(offset + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int countNewlines(CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,106 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.entity.PgVectorType;
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Semantic retrieval: embeds the query and runs an ANN search over chunk embeddings.
+ */
+@Service
+public class VectorChunkRetriever implements ChunkRetriever {
+    
+    private static final Logger logger = LoggerFactory.getLogger(VectorChunkRetriever.class);
+    
+    private final DocumentChunkRepository documentChunkRepository;
+    private final EmbeddingProvider embeddingProvider;
+    private final AppProperties appProperties;
+    private final TransactionTemplate searchTransaction;
+    
+    public VectorChunkRetriever(DocumentChunkRepository documentChunkRepository,
+                                EmbeddingProvider embeddingProvider,
+                                AppProperties appProperties,
+                                PlatformTransactionManager transactionManager) {
+        this.documentChunkRepository = documentChunkRepository;
+        this.embeddingProvider = embeddingProvider;
+        this.appProperties = appProperties;
+        this.searchTransaction = new TransactionTemplate(transactionManager);
+        this.searchTransaction.setReadOnly(true);
+    }
+    
+    /**
+     * The query is embedded before any transaction starts, so no connection is held during the model call.
+     * The search runs in a short (joined or new) read-only transaction so the index search parameters,
+     * which are transaction-local, apply to the search query.
+     */
+    @Override
+    public List<RetrievedChunk> retrieve(String searchQuery, int limit) {
+        // Generate embedding for the search query
+        float[] queryEmbedding = embeddingProvider.generateEmbedding(searchQuery);
+        
+        AppProperties.Vector vector = appProperties.getVector();
+        double threshold = vector.getSimilarityThreshold();
+        
+        logger.info("Searching for similar chunks with threshold: {} and max results: {}", threshold, limit);
+        
+        List<RetrievedChunk> similarChunks = searchTransaction.execute(status -> {
+            // Tune the ANN index scan for this transaction only
+            documentChunkRepository.applyVectorSearchParameters(vector.getEfSearch(), vector.getProbes());
+            
+            // Weak matches are cut off by the database; an empty result means nothing is relevant enough
+            return documentChunkRepository.findSimilarChunksWithScore(
+                    PgVectorType.parameter(queryEmbedding), threshold, limit)
+                .stream()
+                .map(RetrievedChunk::from)
+                .toList();
+        });
+        logger.info("Found {} chunks with similarity >= {}", similarChunks.size(), threshold);
+        
+        return similarChunks;
+    }
+    
+    /**
+     * Search only the chunks of the given documents. A filter on an HNSW search is applied to the
+     * ef_search nearest rows, which can leave few or no rows in a small scope, so small scopes are
+     * scanned exactly and larger ones use an iterative index scan.
+     */
+    public List<RetrievedChunk> retrieveFromDocuments(String searchQuery, Collection<Long> documentIds, int limit) {
+        float[] queryEmbedding = embeddingProvider.generateEmbedding(searchQuery);
+        
+        AppProperties.Vector vector = appProperties.getVector();
+        double threshold = vector.getSimilarityThreshold();
+        
+        List<RetrievedChunk> similarChunks = searchTransaction.execute(status -> {
+            long scopeSize = documentChunkRepository.countEmbeddedChunksInDocuments(documentIds);
+            boolean exactScan = scopeSize <= vector.getExactScanMaxChunks();
+            if (exactScan) {
+                documentChunkRepository.disableIndexScan();
+            } else {
+                documentChunkRepository.applyVectorSearchParameters(vector.getEfSearch(), vector.getProbes());
+                String iterativeScan = vector.getIterativeScan();
+                if (iterativeScan != null && !iterativeScan.isBlank()) {
+                    documentChunkRepository.applyIterativeScan(iterativeScan);
+                }
+            }
+            logger.info("Searching {} embedded chunks of documents {} with {} scan",
+                scopeSize, documentIds, exactScan ? "exact" : "index");
+            
+            return documentChunkRepository.findSimilarChunksInDocuments(
+                    PgVectorType.parameter(queryEmbedding), documentIds, threshold, limit)
+                .stream()
+                .map(RetrievedChunk::from)
+                .toList();
+        });
+        logger.info("Found {} chunks in documents {} with similarity >= {}", similarChunks.size(), documentIds, threshold);
+        
+        return similarChunks;
+    }
+}
@@ -0,0 +1,15 @@
+--liquibase formatted sql
+
+--changeset luanvv:008-replace-ivfflat-with-hnsw runOnChange:true
+--comment: Replace the IVFFlat embedding index with HNSW; re-runs when hnsw_m or hnsw_ef_construction change
+
+-- The IVFFlat index was built on an empty table (no useful lists) and before the column became vector(1024)
+DROP INDEX IF EXISTS idx_document_chunks_embedding;
+DROP INDEX IF EXISTS idx_document_chunks_embedding_hnsw;
+
+CREATE INDEX idx_document_chunks_embedding_hnsw
+ON document_chunks USING hnsw (embedding_vector vector_cosine_ops)
+WITH (m = ${hnsw_m}, ef_construction = ${hnsw_ef_construction});
+
+--rollback DROP INDEX IF EXISTS idx_document_chunks_embedding_hnsw;
+--rollback CREATE INDEX IF NOT EXISTS idx_document_chunks_embedding ON document_chunks USING ivfflat (embedding_vector vector_cosine_ops) WITH (lists = 100);
@@ -0,0 +1,8 @@
+--liquibase formatted sql
+
+--changeset luanvv:009-add-query-history-scores
+--comment: Record the similarity scores of the chunks used to answer each query
+
+ALTER TABLE query_history ADD COLUMN retrieval_scores TEXT;
+
+--rollback ALTER TABLE query_history DROP COLUMN retrieval_scores;
@@ -0,0 +1,15 @@
+--liquibase formatted sql
+
+--changeset luanvv:010-add-chunk-text-search
+--comment: Add a full-text search vector for chunks with a GIN index for lexical retrieval
+
+-- 'simple' configuration: no stemming or stop words, so it works for documents in any language.
+-- Generated column: filled on every insert, including the ingestion batch writer.
+ALTER TABLE document_chunks
+ADD COLUMN text_search tsvector GENERATED ALWAYS AS (to_tsvector('simple', chunk_text)) STORED;
+
+CREATE INDEX idx_document_chunks_text_search
+ON document_chunks USING GIN (text_search);
+
+--rollback DROP INDEX IF EXISTS idx_document_chunks_text_search;
+--rollback ALTER TABLE document_chunks DROP COLUMN text_search;
@@ -0,0 +1,17 @@
+--liquibase formatted sql
+
+--changeset luanvv:011-create-embedding-cache-table
+--comment: Persistent embedding cache keyed by model and SHA-256 of the embedded text
+
+CREATE TABLE embedding_cache (
+    model VARCHAR(255) NOT NULL,
+    text_hash VARCHAR(64) NOT NULL,
+    embedding vector NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (model, text_hash)
+);
+
+-- Entries older than app.embedding.persistent-cache-ttl are pruned by created_at
+CREATE INDEX idx_embedding_cache_created_at ON embedding_cache (created_at);
+
+--rollback DROP TABLE embedding_cache;
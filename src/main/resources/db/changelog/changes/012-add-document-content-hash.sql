@@ -0,0 +1,14 @@
+--liquibase formatted sql
+
+--changeset luanvv:012-add-document-content-hash
+--comment: SHA-256 of the uploaded bytes; identical uploads link to the document that owns their chunks instead of copying them
+
+ALTER TABLE documents ADD COLUMN content_hash VARCHAR(64);
+ALTER TABLE documents ADD COLUMN source_document_id BIGINT REFERENCES documents(id);
+CREATE INDEX idx_documents_content_hash ON documents(content_hash);
+CREATE INDEX idx_documents_source_document_id ON documents(source_document_id);
+
+--rollback DROP INDEX idx_documents_source_document_id;
+--rollback DROP INDEX idx_documents_content_hash;
+--rollback ALTER TABLE documents DROP COLUMN source_document_id;
+--rollback ALTER TABLE documents DROP COLUMN content_hash;
@@ -0,0 +1,59 @@
+package com.luanvv.rag.entity;
+
+import com.pgvector.PGvector;
+import org.hibernate.query.TypedParameterValue;
+import org.junit.jupiter.api.Test;
+import org.postgresql.util.PGobject;
+
+import java.sql.PreparedStatement;
+import java.sql.Types;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the pgvector Hibernate type mapping.
+ */
+public class PgVectorTypeTest {
+
+    private final PgVectorType type = new PgVectorType();
+
+    @Test
+    public void testBindsEmbeddingAsPGvector() throws Exception {
+        // Given
+        PreparedStatement statement = mock(PreparedStatement.class);
+
+        // When
+        type.nullSafeSet(statement, new float[]{1f, 2f, 3f}, 1, null);
+        type.nullSafeSet(statement, null, 2, null);
+
+        // Then
+        verify(statement).setObject(eq(1), any(PGvector.class));
+        verify(statement).setNull(2, Types.OTHER);
+    }
+
+    @Test
+    public void testReadsRegisteredAndUnregisteredValues() throws Exception {
+        // Given
+        PGobject text = new PGobject();
+        text.setType("vector");
+        text.setValue("[1,2.5,3]");
+
+        // Then
+        assertArrayEquals(new float[]{1f, 2f}, PgVectorType.toEmbedding(new PGvector(new float[]{1f, 2f})));
+        assertArrayEquals(new float[]{1f, 2.5f, 3f}, PgVectorType.toEmbedding(text));
+        assertNull(PgVectorType.toEmbedding(null));
+    }
+
+    @Test
+    public void testParameterCarriesVectorType() {
+        // When
+        TypedParameterValue<float[]> parameter = PgVectorType.parameter(new float[]{0.5f});
+
+        // Then
+        assertNotNull(parameter.getType());
+        assertArrayEquals(new float[]{0.5f}, parameter.getValue());
+    }
+}
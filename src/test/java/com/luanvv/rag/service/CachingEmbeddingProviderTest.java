@@ -0,0 +1,91 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.repository.EmbeddingCacheRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the two-tier embedding cache.
+ */
+public class CachingEmbeddingProviderTest {
+
+    private EmbeddingService embeddingService;
+    private EmbeddingCacheRepository embeddingCacheRepository;
+    private CachingEmbeddingProvider provider;
+
+    @BeforeEach
+    public void setUp() {
+        embeddingService = mock(EmbeddingService.class);
+        embeddingCacheRepository = mock(EmbeddingCacheRepository.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(text -> new float[]{text.length()}).toList();
+        });
+        provider = new CachingEmbeddingProvider(embeddingService, embeddingCacheRepository, new AppProperties(),
+            transactionManager, new SimpleMeterRegistry(), "bge-m3");
+    }
+
+    @Test
+    public void testRepeatedTextsAreEmbeddedOnce() {
+        // Given
+        when(embeddingCacheRepository.findEmbeddings(eq("bge-m3"), anyCollection())).thenReturn(Map.of());
+
+        // When
+        List<float[]> first = provider.generateEmbeddings(List.of("alpha", "beta", "alpha"));
+        float[] again = provider.generateEmbedding("beta");
+
+        // Then
+        verify(embeddingService, times(1)).generateEmbeddings(List.of("alpha", "beta"));
+        verify(embeddingCacheRepository, times(1)).saveEmbeddings(eq("bge-m3"), anyMap(), any());
+        assertEquals(5f, first.get(2)[0]);
+        assertEquals(4f, again[0]);
+    }
+
+    @Test
+    public void testDatabaseHitSkipsModel() {
+        // Given
+        String hash = CachingEmbeddingProvider.sha256("stored text");
+        when(embeddingCacheRepository.findEmbeddings(eq("bge-m3"), anyCollection()))
+            .thenReturn(Map.of(hash, new float[]{42f}));
+
+        // When
+        float[] embedding = provider.generateEmbedding("stored text");
+
+        // Then
+        assertEquals(42f, embedding[0]);
+        verifyNoInteractions(embeddingService);
+    }
+
+    @Test
+    public void testStoringEmbeddingsPrunesExpiredEntriesAtMostHourly() {
+        // Given
+        when(embeddingCacheRepository.findEmbeddings(eq("bge-m3"), anyCollection())).thenReturn(Map.of());
+        LocalDateTime start = LocalDateTime.now();
+
+        // When
+        provider.generateEmbedding("alpha");
+        provider.generateEmbedding("beta");
+
+        // Then
+        verify(embeddingCacheRepository, times(2)).saveEmbeddings(eq("bge-m3"), anyMap(), any());
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(embeddingCacheRepository, times(1)).deleteCreatedBefore(cutoff.capture());
+        assertFalse(cutoff.getValue().isBefore(start.minusDays(30)));
+        assertTrue(cutoff.getValue().isBefore(start.minusDays(29)));
+    }
+}
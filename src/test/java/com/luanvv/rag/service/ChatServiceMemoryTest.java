@@ -7,6 +7,7 @@ import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.MessageType;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.ActiveProfiles;
@@ -34,10 +35,13 @@ public class ChatServiceMemoryTest {
     @MockBean
     private ChatClient chatClient;
 
+    @Autowired
+    private ModelCallLimiter modelCallLimiter;
+
     @Test
     public void testSaveMessageToMemory() {
         // Given
-        ChatService chatService = new ChatService(chatClient, chatMessageRepository);
+        ChatService chatService = new ChatService(chatClient, chatMessageRepository, modelCallLimiter);
         String conversationId = "test-conversation-123";
         String userMessage = "Hello, how are you?";
         
@@ -59,7 +63,7 @@ public class ChatServiceMemoryTest {
     @Test
     public void testClearConversationMemory() {
         // Given
-        ChatService chatService = new ChatService(chatClient, chatMessageRepository);
+        ChatService chatService = new ChatService(chatClient, chatMessageRepository, modelCallLimiter);
         String conversationId = "test-conversation-456";
 
         // When
@@ -72,7 +76,7 @@ public class ChatServiceMemoryTest {
     @Test
     public void testGetConversationMessageCount() {
         // Given
-        ChatService chatService = new ChatService(chatClient, chatMessageRepository);
+        ChatService chatService = new ChatService(chatClient, chatMessageRepository, modelCallLimiter);
         String conversationId = "test-conversation-789";
         
         when(chatMessageRepository.countByConversationId(conversationId)).thenReturn(5L);
@@ -0,0 +1,44 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.repository.DocumentChunkView;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for incremental re-chunking.
+ */
+public class ChunkDiffTest {
+
+    @Test
+    public void testOnlyChangedChunksAreAdded() {
+        // Given
+        List<DocumentChunkView> existing = List.of(
+            chunk(10L, 0, "intro"), chunk(11L, 1, "old page"), chunk(12L, 2, "appendix"));
+
+        // When
+        ChunkDiff diff = ChunkDiff.of(existing, List.of("intro", "new page", "extra page", "appendix"));
+
+        // Then
+        assertEquals(1, diff.unchangedCount());
+        assertEquals(Map.of(12L, 3), diff.movedChunks());
+        assertEquals(List.of(11L), diff.staleChunkIds());
+        assertEquals(List.of("new page", "extra page"), diff.addedTexts());
+        assertEquals(List.of(1, 2), List.copyOf(diff.addedChunks().keySet()));
+    }
+
+    private static DocumentChunkView chunk(Long id, int chunkIndex, String text) {
+        return new DocumentChunkView() {
+            public Long getId() { return id; }
+            public Long getDocumentId() { return 1L; }
+            public String getFilename() { return "manual.pdf"; }
+            public String getChunkText() { return text; }
+            public Integer getChunkIndex() { return chunkIndex; }
+            public LocalDateTime getCreatedAt() { return null; }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for batched chunk embedding.
+ */
+public class ChunkEmbeddingServiceTest {
+
+    private EmbeddingProvider embeddingProvider;
+    private ThreadPoolTaskExecutor executor;
+    private ChunkEmbeddingService chunkEmbeddingService;
+
+    @BeforeEach
+    public void setUp() {
+        embeddingProvider = mock(EmbeddingProvider.class);
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.initialize();
+
+        AppProperties appProperties = new AppProperties();
+        appProperties.getEmbedding().setBatchSize(4);
+        chunkEmbeddingService = new ChunkEmbeddingService(embeddingProvider, executor,
+            new ModelCallLimiter(appProperties, new SimpleMeterRegistry()), appProperties);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testEmbedChunksInBatches() {
+        // Given
+        when(embeddingProvider.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(text -> new float[]{text.length()}).toList();
+        });
+        List<String> chunks = List.of("a", "bb", "ccc", "dddd", "eeeee", "ffffff");
+        AtomicInteger completed = new AtomicInteger();
+
+        // When
+        List<float[]> embeddings = chunkEmbeddingService.embedChunks(chunks, completed::addAndGet);
+
+        // Then
+        verify(embeddingProvider, times(2)).generateEmbeddings(anyList());
+        assertEquals(6, completed.get());
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(chunks.get(i).length(), embeddings.get(i)[0]);
+        }
+    }
+
+    @Test
+    public void testFailedBatchIsSplitAndOnlyBadChunkIsDropped() {
+        // Given
+        when(embeddingProvider.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            if (texts.contains("bad")) {
+                throw new RuntimeException("model error");
+            }
+            return texts.stream().map(text -> new float[]{1f}).toList();
+        });
+        List<String> chunks = List.of("one", "bad", "three", "four");
+
+        // When
+        List<float[]> embeddings = chunkEmbeddingService.embedChunks(chunks, count -> {});
+
+        // Then
+        assertNotNull(embeddings.get(0));
+        assertNull(embeddings.get(1));
+        assertNotNull(embeddings.get(2));
+        assertNotNull(embeddings.get(3));
+    }
+}
@@ -0,0 +1,55 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for packing retrieved chunks into the prompt context.
+ */
+public class ContextPackerTest {
+
+    @Test
+    public void testAdjacentChunksAreMergedWithoutOverlap() {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getDocument().setChunkOverlap(40);
+        ContextPacker packer = new ContextPacker(appProperties);
+        List<RetrievedChunk> chunks = List.of(
+            new RetrievedChunk(2L, 1L, "guide.pdf", "the cache is warmed at startup. It holds", 1, 0.9),
+            new RetrievedChunk(1L, 1L, "guide.pdf", "Caching overview: the cache is warmed at startup.", 0, 0.5),
+            new RetrievedChunk(9L, 2L, "notes.txt", "Unrelated note.", 4, 0.7));
+
+        // When
+        String context = packer.pack(chunks);
+
+        // Then
+        assertEquals("""
+            [guide.pdf, relevance 0.90]
+            Caching overview: the cache is warmed at startup. It holds
+
+            [notes.txt, relevance 0.70]
+            Unrelated note.""", context);
+    }
+
+    @Test
+    public void testPackingStopsAtTokenBudget() {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getQuery().setContextTokenBudget(20);
+        ContextPacker packer = new ContextPacker(appProperties);
+        List<RetrievedChunk> chunks = List.of(
+            new RetrievedChunk(1L, 1L, "a.txt", "Lower scored chunk text.", 0, 0.4),
+            new RetrievedChunk(2L, 2L, "b.txt", "Best chunk.", 0, 0.8));
+
+        // When
+        String context = packer.pack(chunks);
+
+        // Then
+        assertEquals("[b.txt, relevance 0.80]\nBest chunk.", context);
+        assertTrue(ContextPacker.estimateTokens(context) <= 20);
+    }
+}
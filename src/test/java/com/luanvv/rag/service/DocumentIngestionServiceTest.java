@@ -0,0 +1,152 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.entity.Document;
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import com.luanvv.rag.repository.DocumentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for queueing and processing documents in the ingestion pipeline.
+ */
+public class DocumentIngestionServiceTest {
+
+    private DocumentRepository documentRepository;
+    private DocumentChunkRepository documentChunkRepository;
+    private TextExtractionService textExtractionService;
+    private DocumentChunkingService documentChunkingService;
+    private ChunkEmbeddingService chunkEmbeddingService;
+    private SemanticAnswerCache answerCache;
+    private ThreadPoolTaskExecutor ingestionExecutor;
+    private DocumentIngestionService service;
+
+    @BeforeEach
+    public void setUp() {
+        documentRepository = mock(DocumentRepository.class);
+        documentChunkRepository = mock(DocumentChunkRepository.class);
+        textExtractionService = mock(TextExtractionService.class);
+        documentChunkingService = mock(DocumentChunkingService.class);
+        chunkEmbeddingService = mock(ChunkEmbeddingService.class);
+        answerCache = mock(SemanticAnswerCache.class);
+        ingestionExecutor = mock(ThreadPoolTaskExecutor.class);
+
+        AppProperties appProperties = new AppProperties();
+        appProperties.getIngestion().setWorkerThreads(1);
+        appProperties.getIngestion().setQueueCapacity(0);
+        service = new DocumentIngestionService(documentRepository, documentChunkRepository, textExtractionService,
+            documentChunkingService, chunkEmbeddingService, answerCache, ingestionExecutor,
+            mock(PlatformTransactionManager.class), appProperties);
+    }
+
+    @Test
+    public void testDocumentCanOnlyBeReservedOnce() {
+        // When
+        service.reserveDocument(7L);
+
+        // Then
+        assertThrows(DocumentBusyException.class, () -> service.reserveDocument(7L));
+        assertThrows(IngestionQueueFullException.class, () -> service.reserveDocument(8L));
+        assertTrue(service.getProgress(8L).isEmpty());
+
+        service.releaseDocument(7L);
+        assertTrue(service.getProgress(7L).isEmpty());
+        assertDoesNotThrow(() -> service.reserveDocument(7L));
+    }
+
+    @Test
+    public void testSubmitDispatchesOnlyAfterCommit() {
+        // Given
+        service.reserveSlot();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // When
+            service.submit(7L);
+
+            // Then
+            verify(ingestionExecutor, never()).execute(any(Runnable.class));
+            assertTrue(service.getProgress(7L).isPresent());
+
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            verify(ingestionExecutor).execute(any(Runnable.class));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testProcessedDocumentStoresChunksAndReleasesSlot() throws Exception {
+        // Given
+        Document document = givenStoredDocument();
+        runTasksInline();
+        when(textExtractionService.extractText(any(Path.class), anyString())).thenReturn("Travel policy");
+        when(documentChunkingService.chunkText("Travel policy")).thenReturn(List.of("Travel policy"));
+        when(documentChunkingService.isValidChunk(anyString())).thenReturn(true);
+        when(chunkEmbeddingService.embedChunks(eq(List.of("Travel policy")), any()))
+            .thenReturn(List.of(new float[] {0.1f, 0.2f}));
+
+        // When
+        service.reserveSlot();
+        service.submit(7L);
+
+        // Then
+        assertEquals(Document.DocumentStatus.PROCESSED, document.getStatus());
+        assertEquals(1, document.getTotalChunks());
+        assertEquals("Travel policy", document.getExtractedText());
+        verify(documentChunkRepository).insertChunksBatch(eq(7L), anyList(), any());
+        verify(answerCache).invalidateDocument(7L);
+        assertTrue(service.getProgress(7L).isEmpty());
+        assertDoesNotThrow(service::reserveSlot);
+    }
+
+    @Test
+    public void testExtractionFailureMarksDocumentErrorAndReleasesSlot() throws Exception {
+        // Given
+        Document document = givenStoredDocument();
+        runTasksInline();
+        when(textExtractionService.extractText(any(Path.class), anyString())).thenThrow(new IOException("Corrupt PDF"));
+
+        // When
+        service.reserveSlot();
+        service.submit(7L);
+
+        // Then
+        assertEquals(Document.DocumentStatus.ERROR, document.getStatus());
+        verify(chunkEmbeddingService, never()).embedChunks(anyList(), any());
+        verify(documentChunkRepository, never()).insertChunksBatch(any(), anyList(), any());
+        assertTrue(service.getProgress(7L).isEmpty());
+        assertDoesNotThrow(service::reserveSlot);
+    }
+
+    private Document givenStoredDocument() {
+        Document document = new Document("policy.pdf", "/uploads/policy.pdf", 13L, "application/pdf");
+        document.setId(7L);
+        when(documentRepository.findById(7L)).thenReturn(Optional.of(document));
+        when(documentRepository.save(any(Document.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        return document;
+    }
+
+    private void runTasksInline() {
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(ingestionExecutor).execute(any(Runnable.class));
+    }
+}
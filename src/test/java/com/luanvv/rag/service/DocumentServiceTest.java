@@ -0,0 +1,109 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.entity.Document;
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import com.luanvv.rag.repository.DocumentRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for content-addressed upload deduplication.
+ */
+public class DocumentServiceTest {
+
+    @TempDir
+    Path uploadDirectory;
+
+    @Test
+    public void testDuplicateUploadLinksToProcessedContent() throws Exception {
+        // Given
+        byte[] content = "Travel policy".getBytes(StandardCharsets.UTF_8);
+        String contentHash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+
+        Path storedFile = Files.writeString(uploadDirectory.resolve("policy_1a2b3c4d.txt"), "Travel policy");
+        Document existing = new Document(1L, "policy.txt", "Travel policy");
+        existing.setFilePath(storedFile.toString());
+        existing.setTotalChunks(3);
+        DocumentRepository documentRepository = mock(DocumentRepository.class);
+        DocumentChunkRepository documentChunkRepository = mock(DocumentChunkRepository.class);
+        DocumentIngestionService ingestionService = mock(DocumentIngestionService.class);
+        when(documentRepository.save(any(Document.class))).thenAnswer(invocation -> {
+            Document document = invocation.getArgument(0);
+            document.setId(2L);
+            return document;
+        });
+        when(documentRepository.findFirstByContentHashAndStatusOrderByIdAsc(contentHash, Document.DocumentStatus.PROCESSED))
+            .thenReturn(Optional.of(existing));
+
+        DocumentService documentService = new DocumentService(documentRepository, documentChunkRepository,
+            ingestionService, mock(SemanticAnswerCache.class), mock(PlatformTransactionManager.class),
+            new AppProperties(), uploadDirectory.toString());
+
+        // When
+        Document uploaded = documentService.uploadDocument(
+            new MockMultipartFile("file", "policy-copy.txt", "text/plain", content));
+
+        // Then
+        assertEquals(contentHash, uploaded.getContentHash());
+        assertEquals(Document.DocumentStatus.PROCESSED, uploaded.getStatus());
+        assertEquals(3, uploaded.getTotalChunks());
+        assertEquals("Travel policy", uploaded.getExtractedText());
+        assertEquals(1L, uploaded.getSourceDocumentId());
+        assertEquals(storedFile.toString(), uploaded.getFilePath());
+        try (Stream<Path> files = Files.list(uploadDirectory)) {
+            assertEquals(List.of(storedFile), files.toList());
+        }
+        verify(documentChunkRepository, never()).moveChunks(anyLong(), anyLong());
+        verify(ingestionService, never()).submit(anyLong());
+        verify(ingestionService).releaseSlot();
+    }
+
+    @Test
+    public void testDeletingLinkedContentHandsChunksAndFileToOldestDuplicate() throws Exception {
+        // Given
+        Path storedFile = Files.writeString(uploadDirectory.resolve("policy.txt"), "Travel policy");
+        Document owner = new Document(1L, "policy.txt", "Travel policy");
+        owner.setFilePath(storedFile.toString());
+        Document firstCopy = new Document(2L, "policy-copy.txt", "Travel policy");
+        firstCopy.setFilePath(storedFile.toString());
+        firstCopy.setSourceDocumentId(1L);
+        Document secondCopy = new Document(3L, "policy-copy-2.txt", "Travel policy");
+        secondCopy.setSourceDocumentId(1L);
+        DocumentRepository documentRepository = mock(DocumentRepository.class);
+        DocumentChunkRepository documentChunkRepository = mock(DocumentChunkRepository.class);
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(owner));
+        when(documentRepository.findBySourceDocumentIdOrderByIdAsc(1L)).thenReturn(List.of(firstCopy, secondCopy));
+        when(documentRepository.existsByFilePathAndIdNot(storedFile.toString(), 1L)).thenReturn(true);
+
+        DocumentService documentService = new DocumentService(documentRepository, documentChunkRepository,
+            mock(DocumentIngestionService.class), mock(SemanticAnswerCache.class),
+            mock(PlatformTransactionManager.class), new AppProperties(), uploadDirectory.toString());
+
+        // When
+        documentService.deleteDocument(1L);
+
+        // Then
+        assertNull(firstCopy.getSourceDocumentId());
+        verify(documentChunkRepository).moveChunks(1L, 2L);
+        verify(documentRepository).relinkDuplicates(1L, 2L);
+        verify(documentRepository).delete(owner);
+        assertTrue(Files.exists(storedFile));
+    }
+}
@@ -0,0 +1,83 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for hybrid retrieval with reciprocal-rank fusion.
+ */
+public class HybridChunkRetrieverTest {
+
+    @Test
+    public void testFusePrefersChunksFoundByBothLegs() {
+        // Given
+        List<RetrievedChunk> vectorRanking = List.of(chunk(1L, 0.9), chunk(2L, 0.8), chunk(3L, 0.7));
+        List<RetrievedChunk> lexicalRanking = List.of(chunk(3L, 0.5), chunk(4L, 0.4));
+
+        // When
+        List<RetrievedChunk> fused = HybridChunkRetriever.fuse(List.of(vectorRanking, lexicalRanking), 60, 3);
+
+        // Then
+        assertEquals(List.of(3L, 1L, 2L), fused.stream().map(RetrievedChunk::id).toList());
+        assertTrue(fused.get(0).score() <= 1.0);
+    }
+
+    @Test
+    public void testFailedLegFallsBackToOtherLeg() {
+        // Given
+        VectorChunkRetriever vectorRetriever = mock(VectorChunkRetriever.class);
+        LexicalChunkRetriever lexicalRetriever = mock(LexicalChunkRetriever.class);
+        when(vectorRetriever.retrieve(anyString(), anyInt())).thenThrow(new RuntimeException("Ollama down"));
+        when(lexicalRetriever.retrieve(anyString(), anyInt())).thenReturn(List.of(chunk(7L, 0.3)));
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.initialize();
+        HybridChunkRetriever retriever = new HybridChunkRetriever(
+            vectorRetriever, lexicalRetriever, executor, new AppProperties());
+
+        // When
+        List<RetrievedChunk> chunks = retriever.retrieve("question", 5);
+        executor.shutdown();
+
+        // Then
+        assertEquals(1, chunks.size());
+        assertEquals(7L, chunks.get(0).id());
+    }
+
+    @Test
+    public void testCancelledRetrievalSkipsLegsThatHaveNotStarted() {
+        // Given
+        VectorChunkRetriever vectorRetriever = mock(VectorChunkRetriever.class);
+        LexicalChunkRetriever lexicalRetriever = mock(LexicalChunkRetriever.class);
+        List<Runnable> queuedLegs = new ArrayList<>();
+        ThreadPoolTaskExecutor executor = mock(ThreadPoolTaskExecutor.class);
+        doAnswer(invocation -> queuedLegs.add(invocation.getArgument(0))).when(executor).execute(any(Runnable.class));
+        HybridChunkRetriever retriever = new HybridChunkRetriever(
+            vectorRetriever, lexicalRetriever, executor, new AppProperties());
+
+        // When
+        CompletableFuture<List<RetrievedChunk>> chunks = retriever.retrieveAsync("question", 5);
+        chunks.cancel(true);
+        queuedLegs.forEach(Runnable::run);
+
+        // Then
+        assertEquals(2, queuedLegs.size());
+        assertTrue(chunks.isCancelled());
+        verifyNoInteractions(vectorRetriever, lexicalRetriever);
+    }
+
+    private static RetrievedChunk chunk(Long id, double score) {
+        return new RetrievedChunk(id, 1L, "doc.txt", "text " + id, id.intValue(), score);
+    }
+}
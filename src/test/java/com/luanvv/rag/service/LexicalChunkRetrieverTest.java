@@ -0,0 +1,38 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for full-text query building.
+ */
+public class LexicalChunkRetrieverTest {
+
+    @Test
+    public void testOrQueryDropsTsQueryOperators() {
+        // When
+        String tsQuery = LexicalChunkRetriever.toOrQuery("Spring & Boot | (config)! spring:*");
+
+        // Then
+        assertEquals("spring | boot | config", tsQuery);
+    }
+
+    @Test
+    public void testBlankQuerySkipsDatabase() {
+        // Given
+        DocumentChunkRepository repository = mock(DocumentChunkRepository.class);
+        LexicalChunkRetriever retriever = new LexicalChunkRetriever(repository);
+
+        // When
+        var chunks = retriever.retrieve("?!", 5);
+
+        // Then
+        assertTrue(chunks.isEmpty());
+        verify(repository, never()).findChunksByTextSearch(anyString(), anyInt());
+    }
+}
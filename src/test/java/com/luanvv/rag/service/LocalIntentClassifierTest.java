@@ -0,0 +1,88 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.repository.DocumentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the rule-based intent classifier.
+ */
+public class LocalIntentClassifierTest {
+
+    private LocalIntentClassifier classifier;
+
+    @BeforeEach
+    public void setUp() {
+        DocumentRepository documentRepository = mock(DocumentRepository.class);
+        when(documentRepository.findAllFilenames()).thenReturn(List.of("Profile.pdf", "quarterly_budget_2024.docx"));
+        classifier = new LocalIntentClassifier(documentRepository, new AppProperties());
+    }
+
+    @Test
+    public void testExplicitIdsAndFilenames() {
+        // When
+        Optional<SearchAnalysis> analysis = classifier.classify("Compare doc 12, 3 and profile.PDF");
+
+        // Then
+        assertTrue(analysis.isPresent());
+        assertEquals(List.of(12, 3), analysis.get().getDocumentIds());
+        assertEquals(List.of("Profile.pdf"), analysis.get().getDocumentNames());
+        assertTrue(analysis.get().isNeedsDocumentSearch());
+    }
+
+    @Test
+    public void testFilenameVocabularyMeansDocumentSearch() {
+        // When
+        Optional<SearchAnalysis> analysis = classifier.classify("How much is left in the budget for Q3?");
+
+        // Then
+        assertTrue(analysis.isPresent());
+        assertTrue(analysis.get().getDocumentIds().isEmpty());
+        assertTrue(analysis.get().isNeedsDocumentSearch());
+    }
+
+    @Test
+    public void testUnsureQuestionIsLeftToTheModel() {
+        // When / Then
+        assertTrue(classifier.classify("What is machine learning?").isEmpty());
+        assertTrue(classifier.classify("Based on the files, which pdf is newest?").isEmpty());
+    }
+
+    @Test
+    public void testDocumentIdsNeedAMarkerOrToEndTheReference() {
+        // When / Then
+        assertEquals(List.of(3), LocalIntentClassifier.extractDocumentIds("Summarize document 3"));
+        assertEquals(List.of(12), LocalIntentClassifier.extractDocumentIds("What does doc #12 say about fees?"));
+        assertEquals(List.of(5), LocalIntentClassifier.extractDocumentIds("Open document id 5 please"));
+        assertEquals(List.of(1, 3), LocalIntentClassifier.extractDocumentIds("Compare files 1 and 3."));
+        assertTrue(LocalIntentClassifier.extractDocumentIds("Show the file 2024 budget").isEmpty());
+        assertTrue(LocalIntentClassifier.extractDocumentIds("Is file 2024.pdf uploaded?").isEmpty());
+    }
+
+    @Test
+    public void testDocumentScopeSeparatesReferencedDocuments() {
+        // When / Then
+        assertEquals(classifier.documentScope("Summarize document 3"), classifier.documentScope("Give me a summary of doc #3"));
+        assertNotEquals(classifier.documentScope("Summarize document 3"), classifier.documentScope("Summarize document 4"));
+        assertNotEquals(classifier.documentScope("Terms in contract_a.pdf?"), classifier.documentScope("Terms in contract_b.pdf?"));
+        assertEquals("", classifier.documentScope("What is machine learning?"));
+    }
+
+    @Test
+    public void testWholeDocumentQuestions() {
+        // When / Then
+        assertTrue(LocalIntentClassifier.asksAboutWholeDocument("Summarize contract.pdf"));
+        assertTrue(LocalIntentClassifier.asksAboutWholeDocument("Give me the key points of doc 3"));
+        assertTrue(LocalIntentClassifier.asksAboutWholeDocument("tl;dr of report.docx"));
+        assertFalse(LocalIntentClassifier.asksAboutWholeDocument("What does contract.pdf say about late fees?"));
+        assertFalse(LocalIntentClassifier.asksAboutWholeDocument("What does contract.pdf say about the review process?"));
+        assertFalse(LocalIntentClassifier.asksAboutWholeDocument("Compare the prices in doc 1 and doc 2"));
+    }
+}
@@ -0,0 +1,139 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import com.luanvv.rag.repository.DocumentReferenceView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for map-reduce answering over whole documents.
+ */
+public class MapReduceAnswerServiceTest {
+
+    private ThreadPoolTaskExecutor executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.initialize();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSectionsWithoutRelevantInformationAreDropped() {
+        // Given
+        List<String> chunks = List.of("Payment is due in 30 days.", "The office cat is named Tom.",
+            "Late payment costs 2% per month.");
+        DocumentReferenceView document = document(1L, "contract.pdf");
+        DocumentChunkRepository documentChunkRepository = repositoryWith(1L, chunks);
+        ChatService chatService = mock(ChatService.class);
+        when(chatService.generateResponse(anyString())).thenAnswer(invocation -> {
+            String prompt = invocation.getArgument(0);
+            if (prompt.contains("office cat")) {
+                return MapReduceAnswerService.NO_RELEVANT_INFORMATION;
+            }
+            return prompt.contains("30 days") ? "Due in 30 days." : "Late fee of 2% per month.";
+        });
+
+        AppProperties appProperties = new AppProperties();
+        appProperties.getQuery().setMapSectionChars(40);
+        MapReduceAnswerService service = new MapReduceAnswerService(documentChunkRepository, chatService,
+            executor, new ModelCallLimiter(appProperties, new SimpleMeterRegistry()), appProperties);
+
+        // When
+        MapReduceAnswerService.MapResult result = service.collectPartialAnswers("What are the payment terms?", List.of(document));
+
+        // Then
+        List<String> partialAnswers = result.partialAnswers();
+        assertEquals(List.of("[contract.pdf, section 1] Due in 30 days.",
+            "[contract.pdf, section 3] Late fee of 2% per month."), partialAnswers);
+        assertFalse(result.isPartial());
+        verify(chatService, times(3)).generateResponse(anyString());
+        assertTrue(service.buildReducePrompt("What are the payment terms?", partialAnswers)
+            .contains("Partial answer 2:\n[contract.pdf, section 3] Late fee of 2% per month."));
+    }
+
+    @Test
+    public void testMappedSectionsAreCappedAndSpreadOverTheDocument() {
+        // Given
+        List<String> chunks = IntStream.rangeClosed(1, 10).mapToObj(i -> "Clause " + i + " of the agreement.").toList();
+        DocumentChunkRepository documentChunkRepository = repositoryWith(1L, chunks);
+        ChatService chatService = mock(ChatService.class);
+        when(chatService.generateResponse(anyString())).thenReturn("Summary of the section.");
+
+        AppProperties appProperties = new AppProperties();
+        appProperties.getQuery().setMapSectionChars(40);
+        appProperties.getQuery().setMapMaxSections(3);
+        appProperties.getQuery().setReduceInputChars(100_000);
+        MapReduceAnswerService service = new MapReduceAnswerService(documentChunkRepository, chatService,
+            executor, new ModelCallLimiter(appProperties, new SimpleMeterRegistry()), appProperties);
+
+        // When
+        MapReduceAnswerService.MapResult result = service.collectPartialAnswers("Summarize it", List.of(document(1L, "contract.pdf")));
+
+        // Then
+        assertTrue(result.isPartial());
+        assertEquals(3, result.mappedSections());
+        assertEquals(10, result.totalSections());
+        assertEquals(List.of("[contract.pdf, section 1] Summary of the section.",
+            "[contract.pdf, section 4] Summary of the section.",
+            "[contract.pdf, section 7] Summary of the section."), result.partialAnswers());
+        verify(chatService, times(3)).generateResponse(anyString());
+    }
+
+    @Test
+    public void testFirstFailureStopsSubmittingSections() {
+        // Given
+        List<String> chunks = IntStream.rangeClosed(1, 10).mapToObj(i -> "Clause " + i + " of the agreement.").toList();
+        DocumentChunkRepository documentChunkRepository = repositoryWith(1L, chunks);
+        ChatService chatService = mock(ChatService.class);
+        when(chatService.generateResponse(anyString())).thenThrow(new ModelBusyException("The chat model is busy"));
+
+        AppProperties appProperties = new AppProperties();
+        appProperties.getQuery().setMapSectionChars(40);
+        appProperties.getQuery().setMapConcurrency(1);
+        MapReduceAnswerService service = new MapReduceAnswerService(documentChunkRepository, chatService,
+            executor, new ModelCallLimiter(appProperties, new SimpleMeterRegistry()), appProperties);
+
+        // When / Then
+        assertThrows(ModelBusyException.class,
+            () -> service.collectPartialAnswers("Summarize it", List.of(document(1L, "contract.pdf"))));
+        verify(chatService, times(1)).generateResponse(anyString());
+    }
+
+    private static DocumentChunkRepository repositoryWith(Long documentId, List<String> chunks) {
+        DocumentChunkRepository documentChunkRepository = mock(DocumentChunkRepository.class);
+        when(documentChunkRepository.findChunkLengthsByDocumentId(documentId))
+            .thenReturn(chunks.stream().map(String::length).toList());
+        when(documentChunkRepository.findChunkTexts(eq(documentId), anyInt(), anyInt())).thenAnswer(invocation -> {
+            int offset = invocation.getArgument(1);
+            int limit = invocation.getArgument(2);
+            return chunks.subList(offset, Math.min(chunks.size(), offset + limit));
+        });
+        return documentChunkRepository;
+    }
+
+    private static DocumentReferenceView document(Long id, String filename) {
+        DocumentReferenceView document = mock(DocumentReferenceView.class);
+        when(document.getId()).thenReturn(id);
+        when(document.getContentDocumentId()).thenReturn(id);
+        when(document.getFilename()).thenReturn(filename);
+        return document;
+    }
+}
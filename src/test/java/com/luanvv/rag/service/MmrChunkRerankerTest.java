@@ -0,0 +1,49 @@
+package com.luanvv.rag.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for maximal marginal relevance reranking.
+ */
+public class MmrChunkRerankerTest {
+
+    @Test
+    public void testNearDuplicateGivesWayToDiverseChunk() {
+        // Given
+        RetrievedChunk best = new RetrievedChunk(1L, 1L, "guide.pdf", "Section 2, part one", 3, 0.90);
+        RetrievedChunk duplicate = new RetrievedChunk(2L, 1L, "guide.pdf", "Section 2, part two", 4, 0.88);
+        RetrievedChunk diverse = new RetrievedChunk(3L, 2L, "faq.txt", "Other topic", 0, 0.80);
+        Map<Long, float[]> embeddings = Map.of(
+            1L, new float[] {1.0f, 0.0f},
+            2L, new float[] {0.99f, 0.1f},
+            3L, new float[] {0.0f, 1.0f});
+
+        // When
+        List<RetrievedChunk> selected = MmrChunkReranker.select(List.of(best, duplicate, diverse), embeddings, 2, 0.7);
+
+        // Then
+        assertEquals(List.of(best, diverse), selected);
+    }
+
+    @Test
+    public void testLambdaOneKeepsRelevanceOrder() {
+        // Given
+        RetrievedChunk best = new RetrievedChunk(1L, 1L, "guide.pdf", "Section 2, part one", 3, 0.90);
+        RetrievedChunk duplicate = new RetrievedChunk(2L, 1L, "guide.pdf", "Section 2, part two", 4, 0.88);
+        RetrievedChunk diverse = new RetrievedChunk(3L, 2L, "faq.txt", "Other topic", 0, 0.80);
+        Map<Long, float[]> embeddings = Map.of(
+            1L, new float[] {1.0f, 0.0f},
+            2L, new float[] {0.99f, 0.1f});
+
+        // When
+        List<RetrievedChunk> selected = MmrChunkReranker.select(List.of(best, duplicate, diverse), embeddings, 2, 1.0);
+
+        // Then
+        assertEquals(List.of(best, duplicate), selected);
+    }
+}
@@ -0,0 +1,112 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.service.ModelCallLimiter.ModelType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ModelCallLimiter admission control.
+ */
+public class ModelCallLimiterTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        // Given
+        ModelCallLimiter limiter = createLimiter(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(
+            () -> limiter.call(ModelType.CHAT, () -> await(release)), executor);
+        awaitActive("chat", 1);
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(
+            () -> limiter.call(ModelType.CHAT, () -> "queued"), executor);
+        awaitWaiting("chat", 1);
+
+        // When / Then
+        assertThrows(ModelBusyException.class, () -> limiter.call(ModelType.CHAT, () -> "rejected"));
+        assertEquals("embedding", limiter.call(ModelType.EMBEDDING, () -> "embedding"));
+        release.countDown();
+        assertEquals("released", running.get(5, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInteractiveCallsGoBeforeBackgroundCalls() throws Exception {
+        // Given
+        ModelCallLimiter limiter = createLimiter(1, 4);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(
+            () -> limiter.call(ModelType.EMBEDDING, () -> await(release)), executor);
+        awaitActive("embedding", 1);
+        CompletableFuture<Boolean> background = CompletableFuture.supplyAsync(() -> limiter.inBackground(
+            () -> limiter.call(ModelType.EMBEDDING, () -> order.add("background"))), executor);
+        awaitWaiting("embedding", 1);
+        CompletableFuture<Boolean> interactive = CompletableFuture.supplyAsync(
+            () -> limiter.call(ModelType.EMBEDDING, () -> order.add("interactive")), executor);
+        awaitWaiting("embedding", 2);
+
+        // When
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        background.get(5, TimeUnit.SECONDS);
+        interactive.get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(List.of("interactive", "background"), order);
+    }
+
+    private ModelCallLimiter createLimiter(int maxConcurrentCalls, int maxQueuedCalls) {
+        AppProperties appProperties = new AppProperties();
+        for (AppProperties.ModelLimit limit : List.of(appProperties.getModel().getChat(), appProperties.getModel().getEmbedding())) {
+            limit.setMaxConcurrentCalls(maxConcurrentCalls);
+            limit.setMaxQueuedCalls(maxQueuedCalls);
+        }
+        return new ModelCallLimiter(appProperties, meterRegistry);
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            return "released";
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void awaitActive(String model, int expected) throws InterruptedException {
+        awaitGauge("rag.model.calls.active", model, expected);
+    }
+
+    private void awaitWaiting(String model, int expected) throws InterruptedException {
+        awaitGauge("rag.model.calls.waiting", model, expected);
+    }
+
+    private void awaitGauge(String name, String model, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get(name).tag("model", model).gauge().value() != expected) {
+            assertTrue(System.currentTimeMillis() < deadline, name + " did not reach " + expected);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.entity.QueryHistory;
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import com.luanvv.rag.repository.DocumentReferenceView;
+import com.luanvv.rag.repository.DocumentRepository;
+import com.luanvv.rag.repository.QueryHistoryRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for speculative retrieval matching, streamed queries and answer caching.
+ */
+public class RagQueryServiceTest {
+
+    @Test
+    public void testTermOverlapAgainstQuestion() {
+        // Given
+        String question = "What does the contract say about payment terms?";
+
+        // When / Then
+        assertEquals(1.0, RagQueryService.termOverlap(question, "contract payment terms"));
+        assertEquals(0.5, RagQueryService.termOverlap(question, "Contract invoice"));
+        assertEquals(0.0, RagQueryService.termOverlap(question, "salary benefits"));
+        assertEquals(1.0, RagQueryService.termOverlap(question, ""));
+    }
+
+    @Test
+    public void testStreamQuerySendsRetrievalThenTokensThenSavedQuery() {
+        // Given
+        SemanticAnswerCache answerCache = mock(SemanticAnswerCache.class);
+        QueryHistoryRepository queryHistoryRepository = mock(QueryHistoryRepository.class);
+        ChatService chatService = mock(ChatService.class);
+        SemanticAnswerCache.CachedAnswer cached = new SemanticAnswerCache.CachedAnswer(
+            "Payment is due in 30 days.", "contract.pdf", "7=0.9100", List.of(7L), Set.of(3L));
+        when(answerCache.lookup(eq("When is payment due?"), any()))
+            .thenReturn(new SemanticAnswerCache.Lookup(new float[] {1.0f}, "", 0, cached));
+        when(queryHistoryRepository.save(any(QueryHistory.class))).then(returnsFirstArg());
+
+        RagQueryService service = new RagQueryService(mock(DocumentChunkRepository.class),
+            mock(DocumentRepository.class), queryHistoryRepository, mock(VectorChunkRetriever.class),
+            mock(LexicalChunkRetriever.class), mock(HybridChunkRetriever.class), mock(ThreadPoolTaskExecutor.class),
+            mock(LocalIntentClassifier.class), mock(MapReduceAnswerService.class), mock(ContextPacker.class), mock(MmrChunkReranker.class), answerCache,
+            new AppProperties(), chatService);
+
+        // When
+        List<QueryStreamEvent> events = service.streamQuery("When is payment due?").collectList().block();
+
+        // Then
+        assertNotNull(events);
+        assertEquals(List.of(QueryStreamEvent.RETRIEVAL, QueryStreamEvent.TOKEN, QueryStreamEvent.DONE),
+            events.stream().map(QueryStreamEvent::name).toList());
+        assertEquals("contract.pdf", events.get(0).data().get("relevantDocuments"));
+        assertEquals("Payment is due in 30 days.", events.get(1).data().get("text"));
+        verify(queryHistoryRepository).save(argThat(history ->
+            "Payment is due in 30 days.".equals(history.getAnswer()) && "7=0.9100".equals(history.getRetrievalScores())));
+        verify(answerCache, never()).put(any(), any());
+    }
+
+    @Test
+    public void testFallbackAnswerIsNotCachedWhenTheModelFails() {
+        // Given
+        SemanticAnswerCache answerCache = mock(SemanticAnswerCache.class);
+        QueryHistoryRepository queryHistoryRepository = mock(QueryHistoryRepository.class);
+        DocumentChunkRepository documentChunkRepository = mock(DocumentChunkRepository.class);
+        HybridChunkRetriever hybridChunkRetriever = mock(HybridChunkRetriever.class);
+        MmrChunkReranker chunkReranker = mock(MmrChunkReranker.class);
+        ChatService chatService = mock(ChatService.class);
+        List<RetrievedChunk> chunks = List.of(new RetrievedChunk(7L, 3L, "contract.pdf", "Payment is due in 30 days.", 0, 0.9));
+        when(answerCache.lookup(eq("When is payment due?"), any()))
+            .thenReturn(new SemanticAnswerCache.Lookup(new float[] {1.0f}, "", 0, null));
+        when(documentChunkRepository.existsAnyChunk()).thenReturn(true);
+        when(hybridChunkRetriever.retrieve(anyString(), anyInt())).thenReturn(chunks);
+        when(chunkReranker.rerank(any(), anyInt())).thenReturn(chunks);
+        when(chatService.generateResponse(anyString(), any())).thenThrow(new IllegalStateException("Ollama unavailable"));
+        when(queryHistoryRepository.save(any(QueryHistory.class))).then(returnsFirstArg());
+        AppProperties appProperties = new AppProperties();
+        appProperties.getQuery().setSpeculativeRetrieval(false);
+
+        RagQueryService service = new RagQueryService(documentChunkRepository,
+            mock(DocumentRepository.class), queryHistoryRepository, mock(VectorChunkRetriever.class),
+            mock(LexicalChunkRetriever.class), hybridChunkRetriever, mock(ThreadPoolTaskExecutor.class),
+            mock(LocalIntentClassifier.class), mock(MapReduceAnswerService.class), mock(ContextPacker.class), chunkReranker, answerCache,
+            appProperties, chatService);
+
+        // When
+        QueryHistory history = service.processQuery("When is payment due?");
+
+        // Then
+        assertTrue(history.getAnswer().startsWith("Based on the uploaded documents"));
+        verify(answerCache, never()).put(any(), any());
+    }
+
+    @Test
+    public void testBusyModelDuringIntentAnalysisRejectsQueryWithoutRetrieval() {
+        // Given
+        SemanticAnswerCache answerCache = mock(SemanticAnswerCache.class);
+        QueryHistoryRepository queryHistoryRepository = mock(QueryHistoryRepository.class);
+        DocumentChunkRepository documentChunkRepository = mock(DocumentChunkRepository.class);
+        VectorChunkRetriever vectorChunkRetriever = mock(VectorChunkRetriever.class);
+        HybridChunkRetriever hybridChunkRetriever = mock(HybridChunkRetriever.class);
+        ChatService chatService = mock(ChatService.class);
+        CompletableFuture<List<RetrievedChunk>> speculativeChunks = new CompletableFuture<>();
+        when(answerCache.lookup(eq("When is payment due?"), any()))
+            .thenReturn(new SemanticAnswerCache.Lookup(new float[] {1.0f}, "", 0, null));
+        when(documentChunkRepository.existsAnyChunk()).thenReturn(true);
+        when(hybridChunkRetriever.retrieveAsync(eq("When is payment due?"), anyInt())).thenReturn(speculativeChunks);
+        when(chatService.generateResponse(anyString(), any())).thenThrow(new ModelBusyException("The chat model is busy"));
+
+        RagQueryService service = new RagQueryService(documentChunkRepository,
+            mock(DocumentRepository.class), queryHistoryRepository, vectorChunkRetriever,
+            mock(LexicalChunkRetriever.class), hybridChunkRetriever, mock(ThreadPoolTaskExecutor.class),
+            mock(LocalIntentClassifier.class), mock(MapReduceAnswerService.class), mock(ContextPacker.class),
+            mock(MmrChunkReranker.class), answerCache, new AppProperties(), chatService);
+
+        // When / Then: the controllers answer ModelBusyException with 429
+        assertThrows(ModelBusyException.class, () -> service.processQuery("When is payment due?"));
+        assertTrue(speculativeChunks.isCancelled());
+        verify(hybridChunkRetriever, never()).retrieve(anyString(), anyInt());
+        verifyNoInteractions(vectorChunkRetriever);
+        verify(chatService, times(1)).generateResponse(anyString(), any());
+        verify(queryHistoryRepository, never()).save(any());
+        verify(answerCache, never()).put(any(), any());
+    }
+
+    @Test
+    public void testScopedSearchFallsBackToFullTextInsteadOfMapReduce() {
+        // Given
+        SemanticAnswerCache answerCache = mock(SemanticAnswerCache.class);
+        QueryHistoryRepository queryHistoryRepository = mock(QueryHistoryRepository.class);
+        DocumentRepository documentRepository = mock(DocumentRepository.class);
+        VectorChunkRetriever vectorChunkRetriever = mock(VectorChunkRetriever.class);
+        LexicalChunkRetriever lexicalChunkRetriever = mock(LexicalChunkRetriever.class);
+        LocalIntentClassifier localIntentClassifier = mock(LocalIntentClassifier.class);
+        MapReduceAnswerService mapReduceAnswerService = mock(MapReduceAnswerService.class);
+        MmrChunkReranker chunkReranker = mock(MmrChunkReranker.class);
+        ChatService chatService = mock(ChatService.class);
+        String question = "What does doc #3 say about payment?";
+        SearchAnalysis analysis = new SearchAnalysis();
+        analysis.setNeedsDocumentSearch(true);
+        analysis.setDocumentIds(List.of(3));
+        analysis.setSearchQuery("payment");
+        DocumentReferenceView document = mock(DocumentReferenceView.class);
+        when(document.getId()).thenReturn(3L);
+        when(document.getContentDocumentId()).thenReturn(3L);
+        when(document.getFilename()).thenReturn("contract.pdf");
+        List<RetrievedChunk> chunks = List.of(new RetrievedChunk(7L, 3L, "contract.pdf", "Payment is due in 30 days.", 0, 0.4));
+        when(answerCache.lookup(eq(question), any())).thenReturn(new SemanticAnswerCache.Lookup(null, "", 0, null));
+        when(localIntentClassifier.classify(question)).thenReturn(Optional.of(analysis));
+        when(documentRepository.findReferencedDocuments(any(), any())).thenReturn(List.of(document));
+        when(vectorChunkRetriever.retrieveFromDocuments(anyString(), any(), anyInt()))
+            .thenThrow(new ModelBusyException("The embedding model is busy"));
+        when(lexicalChunkRetriever.retrieveFromDocuments(eq("payment"), eq(List.of(3L)), anyInt())).thenReturn(chunks);
+        when(chunkReranker.rerank(any(), anyInt())).thenReturn(chunks);
+        when(chatService.generateResponse(anyString(), any())).thenReturn("Payment is due in 30 days.");
+        when(queryHistoryRepository.save(any(QueryHistory.class))).then(returnsFirstArg());
+
+        RagQueryService service = new RagQueryService(mock(DocumentChunkRepository.class),
+            documentRepository, queryHistoryRepository, vectorChunkRetriever,
+            lexicalChunkRetriever, mock(HybridChunkRetriever.class), mock(ThreadPoolTaskExecutor.class),
+            localIntentClassifier, mapReduceAnswerService, mock(ContextPacker.class), chunkReranker, answerCache,
+            new AppProperties(), chatService);
+
+        // When
+        QueryHistory history = service.processQuery(question);
+
+        // Then
+        assertEquals("Payment is due in 30 days.", history.getAnswer());
+        assertEquals("contract.pdf", history.getRelevantDocuments());
+        verify(mapReduceAnswerService, never()).collectPartialAnswers(any(), any());
+    }
+}
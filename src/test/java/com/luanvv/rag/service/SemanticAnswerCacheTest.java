@@ -0,0 +1,82 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the semantic answer cache.
+ */
+public class SemanticAnswerCacheTest {
+
+    private EmbeddingProvider embeddingProvider;
+    private SemanticAnswerCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        embeddingProvider = mock(EmbeddingProvider.class);
+        when(embeddingProvider.generateEmbedding("What is the notice period?")).thenReturn(new float[]{1f, 0f});
+        when(embeddingProvider.generateEmbedding("what's the notice period")).thenReturn(new float[]{0.99f, 0.05f});
+        when(embeddingProvider.generateEmbedding("Who signed the contract?")).thenReturn(new float[]{0f, 1f});
+        cache = new SemanticAnswerCache(embeddingProvider, new AppProperties(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void testSimilarQuestionHitsAndOtherQuestionMisses() {
+        // Given
+        SemanticAnswerCache.Lookup miss = cache.lookup("What is the notice period?", "");
+        cache.put(miss, answerFrom(7L));
+
+        // When
+        SemanticAnswerCache.Lookup similar = cache.lookup("what's the notice period", "");
+        SemanticAnswerCache.Lookup different = cache.lookup("Who signed the contract?", "");
+
+        // Then
+        assertFalse(miss.isHit());
+        assertTrue(similar.isHit());
+        assertEquals("Thirty days", similar.answer().answer());
+        assertFalse(different.isHit());
+        assertEquals(1.0 / 3, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testInvalidationDropsEntriesAndRejectsInFlightAnswers() {
+        // Given
+        cache.put(cache.lookup("What is the notice period?", ""), answerFrom(7L));
+        SemanticAnswerCache.Lookup inFlight = cache.lookup("Who signed the contract?", "");
+
+        // When
+        cache.invalidateDocument(7L);
+        cache.put(inFlight, answerFrom(8L));
+
+        // Then
+        assertEquals(0, cache.size());
+        assertFalse(cache.lookup("what's the notice period", "").isHit());
+    }
+
+    @Test
+    public void testSimilarQuestionAboutAnotherDocumentMisses() {
+        // Given
+        cache.put(cache.lookup("What is the notice period?", "names=[contract_a.pdf]"), answerFrom(7L));
+
+        // When
+        SemanticAnswerCache.Lookup otherDocument = cache.lookup("what's the notice period", "names=[contract_b.pdf]");
+        SemanticAnswerCache.Lookup sameDocument = cache.lookup("what's the notice period", "names=[contract_a.pdf]");
+
+        // Then
+        assertFalse(otherDocument.isHit());
+        assertTrue(sameDocument.isHit());
+    }
+
+    private static SemanticAnswerCache.CachedAnswer answerFrom(Long documentId) {
+        return new SemanticAnswerCache.CachedAnswer("Thirty days", "contract.pdf", null,
+            List.of(1L, 2L), Set.of(documentId));
+    }
+}
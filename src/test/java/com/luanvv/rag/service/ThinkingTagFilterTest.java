@@ -0,0 +1,42 @@
+package com.luanvv.rag.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ThinkingTagFilter.
+ */
+public class ThinkingTagFilterTest {
+
+    @Test
+    public void testStripCompleteResponse() {
+        // Given
+        String response = "<think>\nThe user asks about payment.\n</think>\n\nPayment is due in <b>30</b> days."
+            + "<analysis>check</analysis> Stray </thinking>tag, and 2 < 3.\n\n\n\nDone.\n";
+
+        // When
+        String cleaned = ThinkingTagFilter.strip(response);
+
+        // Then
+        assertEquals("Payment is due in <b>30</b> days. Stray tag, and 2 < 3.\n\nDone.", cleaned);
+    }
+
+    @Test
+    public void testTagsSplitAcrossChunks() {
+        // Given
+        String[] chunks = {"<thi", "nk>hidden <reason", "ing>still</thin", "k>\n", "Answer <", "thought>x</", "thought>ok <thi"};
+        ThinkingTagFilter filter = new ThinkingTagFilter();
+
+        // When
+        StringBuilder streamed = new StringBuilder();
+        for (String chunk : chunks) {
+            streamed.append(filter.accept(chunk));
+        }
+        streamed.append(filter.finish());
+
+        // Then
+        assertEquals("Answer ok <thi", streamed.toString());
+        assertEquals(2, filter.getRemovedSpans());
+    }
+}
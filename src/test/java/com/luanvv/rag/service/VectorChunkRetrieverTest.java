@@ -0,0 +1,68 @@
+package com.luanvv.rag.service;
+
+import com.luanvv.rag.config.AppProperties;
+import com.luanvv.rag.repository.DocumentChunkRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for VectorChunkRetriever.
+ */
+public class VectorChunkRetrieverTest {
+
+    @Test
+    public void testQueryIsEmbeddedBeforeTheSearchTransaction() {
+        // Given
+        DocumentChunkRepository documentChunkRepository = mock(DocumentChunkRepository.class);
+        EmbeddingProvider embeddingProvider = mock(EmbeddingProvider.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(embeddingProvider.generateEmbedding("payment terms")).thenReturn(new float[] {0.1f, 0.2f});
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(documentChunkRepository.findSimilarChunksWithScore(any(), anyDouble(), anyInt())).thenReturn(List.of());
+        VectorChunkRetriever retriever = new VectorChunkRetriever(documentChunkRepository, embeddingProvider,
+            new AppProperties(), transactionManager);
+
+        // When
+        List<RetrievedChunk> chunks = retriever.retrieve("payment terms", 5);
+
+        // Then
+        assertTrue(chunks.isEmpty());
+        InOrder inOrder = inOrder(embeddingProvider, transactionManager, documentChunkRepository);
+        inOrder.verify(embeddingProvider).generateEmbedding("payment terms");
+        inOrder.verify(transactionManager).getTransaction(argThat(definition -> definition.isReadOnly()));
+        inOrder.verify(documentChunkRepository).applyVectorSearchParameters(anyInt(), anyInt());
+        inOrder.verify(documentChunkRepository).findSimilarChunksWithScore(any(), anyDouble(), eq(5));
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    public void testSmallDocumentScopeIsScannedExactly() {
+        // Given
+        DocumentChunkRepository documentChunkRepository = mock(DocumentChunkRepository.class);
+        EmbeddingProvider embeddingProvider = mock(EmbeddingProvider.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(embeddingProvider.generateEmbedding("late fees")).thenReturn(new float[] {0.1f, 0.2f});
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(documentChunkRepository.countEmbeddedChunksInDocuments(List.of(7L))).thenReturn(40L);
+        when(documentChunkRepository.findSimilarChunksInDocuments(any(), eq(List.of(7L)), anyDouble(), eq(5)))
+            .thenReturn(List.of());
+        VectorChunkRetriever retriever = new VectorChunkRetriever(documentChunkRepository, embeddingProvider,
+            new AppProperties(), transactionManager);
+
+        // When
+        retriever.retrieveFromDocuments("late fees", List.of(7L), 5);
+
+        // Then
+        verify(documentChunkRepository).disableIndexScan();
+        verify(documentChunkRepository, never()).applyIterativeScan(anyString());
+        verify(documentChunkRepository).findSimilarChunksInDocuments(any(), eq(List.of(7L)), anyDouble(), eq(5));
+    }
+}